@@ -0,0 +1,72 @@
+package com.openclassrooms.tourguide.benchmark;
+
+import java.util.Date;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+import com.openclassrooms.tourguide.model.User;
+import com.openclassrooms.tourguide.service.GpsUtilService;
+import com.openclassrooms.tourguide.service.RewardCentralService;
+import com.openclassrooms.tourguide.service.RewardsService;
+
+import gpsUtil.location.Attraction;
+import gpsUtil.location.VisitedLocation;
+
+/**
+ * Reward evaluation of a user whose whole location history has not been checked yet.
+ * A new user is built before each invocation, since a history is only checked once.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CalculateRewardsBenchmark {
+
+    @Param({"10", "100", "1000"})
+    public int historySize;
+
+    @Param({"0"})
+    public long rewardLatencyMillis;
+
+    private RewardsService rewardsService;
+    private VisitedLocation[] history;
+    private User user;
+
+    @Setup(Level.Trial)
+    public void setUpTrial() {
+        GpsUtilService gpsUtilService = new GpsUtilService(new StubGpsUtil(0));
+        rewardsService = new RewardsService(gpsUtilService,
+                new RewardCentralService(new StubRewardCentral(rewardLatencyMillis)));
+        //Every tenth location is on an attraction so that some rewards are granted
+        List<Attraction> attractions = gpsUtilService.getAttractions().join();
+        UUID userId = UUID.randomUUID();
+        history = new VisitedLocation[historySize];
+        for (int i = 0; i < historySize; i++) {
+            history[i] = new VisitedLocation(userId, i % 10 == 0 ? attractions.get(i / 10 % attractions.size())
+                    : StubGpsUtil.randomLocation(), new Date());
+        }
+    }
+
+    @Setup(Level.Invocation)
+    public void setUpInvocation() {
+        user = new User(history[0].userId, "jon", "000", "jon@tourGuide.com");
+        for (VisitedLocation location : history) {
+            user.addToVisitedLocations(location);
+        }
+    }
+
+    @Benchmark
+    public void calculateRewards() {
+        rewardsService.calculateRewards(user).join();
+    }
+
+    @Benchmark
+    public List<RewardsService.NewReward> addNewRewards() {
+        return rewardsService.addNewRewards(user);
+    }
+}
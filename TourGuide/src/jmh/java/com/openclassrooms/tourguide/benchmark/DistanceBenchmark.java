@@ -0,0 +1,76 @@
+package com.openclassrooms.tourguide.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+import com.openclassrooms.tourguide.service.GpsUtilService;
+import com.openclassrooms.tourguide.service.RewardCentralService;
+import com.openclassrooms.tourguide.service.RewardsService;
+import com.openclassrooms.tourguide.spatial.DistanceCalculator;
+import com.openclassrooms.tourguide.spatial.GeoPoint;
+
+import gpsUtil.location.Location;
+
+/**
+ * Cost of one great circle distance between two locations, from the raw locations or from points with precomputed
+ * trigonometry, and of one proximity check between precomputed points
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DistanceBenchmark {
+
+    private RewardsService rewardsService;
+    private Location[] locations;
+    private GeoPoint[] points;
+    private final double miles = 1000;
+    private final double cosLimit = DistanceCalculator.cosLimit(miles);
+
+    @Setup
+    public void setUp() {
+        rewardsService = new RewardsService(new GpsUtilService(new StubGpsUtil(0)),
+                new RewardCentralService(new StubRewardCentral(0)));
+        locations = new Location[1024];
+        points = new GeoPoint[locations.length];
+        for (int i = 0; i < locations.length; i++) {
+            locations[i] = StubGpsUtil.randomLocation();
+            points[i] = GeoPoint.of(locations[i]);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(1023)
+    public double getDistance() {
+        double sum = 0;
+        for (int i = 1; i < locations.length; i++) {
+            sum += rewardsService.getDistance(locations[i - 1], locations[i]);
+        }
+        return sum;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(1023)
+    public double getDistancePrecomputed() {
+        double sum = 0;
+        for (int i = 1; i < points.length; i++) {
+            sum += DistanceCalculator.getDistance(points[i - 1], points[i]);
+        }
+        return sum;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(1023)
+    public int isWithin() {
+        int count = 0;
+        for (int i = 1; i < points.length; i++) {
+            if (DistanceCalculator.isWithin(points[i - 1], points[i], miles, cosLimit)) {
+                count++;
+            }
+        }
+        return count;
+    }
+}
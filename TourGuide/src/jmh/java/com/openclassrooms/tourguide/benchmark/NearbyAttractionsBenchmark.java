@@ -0,0 +1,65 @@
+package com.openclassrooms.tourguide.benchmark;
+
+import java.util.Date;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+import com.openclassrooms.tourguide.helper.InternalTestHelper;
+import com.openclassrooms.tourguide.model.AttractionDistanceDTO;
+import com.openclassrooms.tourguide.model.User;
+import com.openclassrooms.tourguide.service.*;
+
+import gpsUtil.location.VisitedLocation;
+
+/**
+ * The five closest attractions of a location, with their reward points
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class NearbyAttractionsBenchmark {
+
+    @Param({"0", "1"})
+    public long rewardLatencyMillis;
+
+    private TourGuideService tourGuideService;
+    private User user;
+    private VisitedLocation[] locations;
+
+    @Setup
+    public void setUp() {
+        GpsUtilService gpsUtilService = new GpsUtilService(new StubGpsUtil(0));
+        RewardCentralService rewardCentralService = new RewardCentralService(new StubRewardCentral(rewardLatencyMillis));
+        InternalTestHelper.setInternalUserNumber(0);
+        tourGuideService = new TourGuideService(gpsUtilService,
+                new RewardsService(gpsUtilService, rewardCentralService), new UserService(), rewardCentralService);
+        tourGuideService.tracker.stopTracking();
+
+        user = new User(UUID.randomUUID(), "jon", "000", "jon@tourGuide.com");
+        locations = new VisitedLocation[1024];
+        for (int i = 0; i < locations.length; i++) {
+            locations[i] = new VisitedLocation(user.getUserId(), StubGpsUtil.randomLocation(), new Date());
+        }
+    }
+
+    @Benchmark
+    public List<AttractionDistanceDTO> getNearByAttractions(Cursor cursor) {
+        return tourGuideService.getNearByAttractions(locations[cursor.next()], user).join();
+    }
+
+    @State(Scope.Thread)
+    public static class Cursor {
+        private int position;
+
+        int next() {
+            position = (position + 1) & 1023;
+            return position;
+        }
+    }
+}
@@ -0,0 +1,41 @@
+package com.openclassrooms.tourguide.benchmark;
+
+import java.util.Date;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+
+import gpsUtil.GpsUtil;
+import gpsUtil.location.Attraction;
+import gpsUtil.location.Location;
+import gpsUtil.location.VisitedLocation;
+
+/**
+ * GpsUtil without the rate limiter, answering after a configurable latency instead of its random sleep
+ */
+public class StubGpsUtil extends GpsUtil {
+
+    private final long latencyMillis;
+    private final List<Attraction> attractions;
+
+    public StubGpsUtil(long latencyMillis) {
+        this.latencyMillis = latencyMillis;
+        attractions = super.getAttractions();
+    }
+
+    @Override
+    public VisitedLocation getUserLocation(UUID userId) {
+        StubLatency.sleep(latencyMillis);
+        return new VisitedLocation(userId, randomLocation(), new Date());
+    }
+
+    @Override
+    public List<Attraction> getAttractions() {
+        return attractions;
+    }
+
+    public static Location randomLocation() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        return new Location(random.nextDouble(-85.05112878, 85.05112878), random.nextDouble(-180, 180));
+    }
+}
@@ -0,0 +1,24 @@
+package com.openclassrooms.tourguide.benchmark;
+
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+
+import rewardCentral.RewardCentral;
+
+/**
+ * RewardCentral answering after a configurable latency instead of its random sleep of up to a second
+ */
+public class StubRewardCentral extends RewardCentral {
+
+    private final long latencyMillis;
+
+    public StubRewardCentral(long latencyMillis) {
+        this.latencyMillis = latencyMillis;
+    }
+
+    @Override
+    public int getAttractionRewardPoints(UUID attractionId, UUID userId) {
+        StubLatency.sleep(latencyMillis);
+        return ThreadLocalRandom.current().nextInt(1, 1000);
+    }
+}
@@ -0,0 +1,47 @@
+package com.openclassrooms.tourguide.benchmark;
+
+import java.util.Date;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+import com.openclassrooms.tourguide.model.User;
+import com.openclassrooms.tourguide.model.UserReward;
+
+import gpsUtil.GpsUtil;
+import gpsUtil.location.Attraction;
+import gpsUtil.location.VisitedLocation;
+
+/**
+ * Adding every attraction as a reward to a new user, twice so that half of the calls are duplicates
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class UserRewardBenchmark {
+
+    private List<Attraction> attractions;
+    private VisitedLocation visitedLocation;
+
+    @Setup
+    public void setUp() {
+        attractions = new GpsUtil().getAttractions();
+        visitedLocation = new VisitedLocation(UUID.randomUUID(), attractions.get(0), new Date());
+    }
+
+    @Benchmark
+    public User addUserReward() {
+        User user = new User(visitedLocation.userId, "jon", "000", "jon@tourGuide.com");
+        for (int i = 0; i < 2; i++) {
+            for (int ordinal = 0; ordinal < attractions.size(); ordinal++) {
+                user.addUserReward(new UserReward(ordinal, visitedLocation, attractions.get(ordinal)));
+            }
+        }
+        return user;
+    }
+}
@@ -0,0 +1,46 @@
+package com.openclassrooms.tourguide.benchmark;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+import com.openclassrooms.tourguide.helper.InternalTestHelper;
+import com.openclassrooms.tourguide.model.User;
+import com.openclassrooms.tourguide.service.UserService;
+
+/**
+ * Listing all users, as the tracker does at each cycle
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class UserServiceBenchmark {
+
+    @Param({"10000", "100000", "1000000"})
+    public int userCount;
+
+    private UserService userService;
+
+    @Setup
+    public void setUp() {
+        InternalTestHelper.setInternalUserNumber(userCount);
+        userService = new UserService(42, false);
+        userService.initializeInternalUsers();
+    }
+
+    @Benchmark
+    public UserService initializeInternalUsers() {
+        UserService generated = new UserService(42, false);
+        generated.initializeInternalUsers();
+        return generated;
+    }
+
+    @Benchmark
+    public List<User> getAllUsers() {
+        return userService.getAllUsers();
+    }
+}
@@ -0,0 +1,74 @@
+package com.openclassrooms.tourguide.benchmark;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.ToIntFunction;
+import java.util.stream.Stream;
+
+import org.openjdk.jmh.annotations.*;
+
+import com.openclassrooms.tourguide.helper.InternalTestHelper;
+import com.openclassrooms.tourguide.model.User;
+import com.openclassrooms.tourguide.repository.FileUserStore;
+import com.openclassrooms.tourguide.service.UserService;
+
+import gpsUtil.location.Attraction;
+
+/**
+ * Saving all users in a full snapshot and loading them back, as on shutdown and startup
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx6g")
+public class UserStoreBenchmark {
+
+    private static final ToIntFunction<Attraction> NO_REWARDS = attraction -> {
+        throw new IllegalStateException("Internal users have no rewards");
+    };
+
+    @Param({"100000", "1000000"})
+    public int userCount;
+
+    private List<User> users;
+    private Path directory;
+    private FileUserStore store;
+
+    @Setup
+    public void setUp() throws IOException {
+        InternalTestHelper.setInternalUserNumber(userCount);
+        UserService userService = new UserService(42, false);
+        userService.initializeInternalUsers();
+        users = userService.getAllUsers();
+        directory = Files.createTempDirectory("tourguide-store");
+        //No delta allowed, so every checkpoint is a full snapshot
+        store = new FileUserStore(directory, FileUserStore.DEFAULT_SHARD_SIZE, 0);
+        store.load(NO_REWARDS);
+        store.checkpoint(users);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        try (Stream<Path> paths = Files.walk(directory)) {
+            for (Path path : paths.sorted(Comparator.reverseOrder()).toList()) {
+                Files.delete(path);
+            }
+        }
+    }
+
+    @Benchmark
+    public int checkpoint() throws IOException {
+        return store.checkpoint(users);
+    }
+
+    @Benchmark
+    public List<User> load() throws IOException {
+        return new FileUserStore(directory).load(NO_REWARDS);
+    }
+}
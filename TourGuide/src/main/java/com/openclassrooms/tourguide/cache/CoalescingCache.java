@@ -0,0 +1,134 @@
+package com.openclassrooms.tourguide.cache;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.function.LongSupplier;
+
+/**
+ * Bounded cache of asynchronously loaded values.
+ * <p>
+ * The future of a load is stored as soon as the load starts, so concurrent lookups of the same key share a single
+ * load. Failed loads are not kept. Entries expire a fixed time after they were loaded, and the oldest entries are
+ * evicted first once the cache holds more than its maximum size.
+ */
+public class CoalescingCache<K, V> {
+
+    private final Map<K, Entry<K, V>> entries = new ConcurrentHashMap<>();
+    // Entries in insertion order, which is also their expiry order since they all live for the same time
+    private final ConcurrentLinkedQueue<Entry<K, V>> insertionOrder = new ConcurrentLinkedQueue<>();
+    private final int maxSize;
+    private final long timeToLiveNanos;
+    private final LongSupplier nanoTime;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    public CoalescingCache(int maxSize, Duration timeToLive) {
+        this(maxSize, timeToLive, System::nanoTime);
+    }
+
+    /**
+     * @param nanoTime source of time, to control expiry in tests
+     */
+    public CoalescingCache(int maxSize, Duration timeToLive, LongSupplier nanoTime) {
+        if (maxSize < 1) {
+            throw new IllegalArgumentException("Cache size must be positive");
+        }
+        this.maxSize = maxSize;
+        this.timeToLiveNanos = timeToLive.toNanos();
+        this.nanoTime = nanoTime;
+    }
+
+    /**
+     * Returns the cached value of the key, or loads it if it is missing or expired
+     *
+     * @param key    of the value
+     * @param loader starts loading the value of a missing key
+     * @return a completable future of the value, shared by all callers until it expires
+     */
+    public CompletableFuture<V> get(K key, Function<K, CompletableFuture<V>> loader) {
+        long now = nanoTime.getAsLong();
+        Entry<K, V> entry = entries.get(key);
+        if (entry != null && !entry.isExpired(now)) {
+            hits.increment();
+            return entry.future;
+        }
+
+        Entry<K, V> created = new Entry<>(key, new CompletableFuture<>(), now + timeToLiveNanos);
+        Entry<K, V> existing = entry == null ? entries.putIfAbsent(key, created)
+                : entries.replace(key, entry, created) ? null : entries.putIfAbsent(key, created);
+        if (existing != null) { //Another caller started loading the key first
+            hits.increment();
+            return existing.future;
+        }
+        misses.increment();
+        if (entry != null) {
+            evictions.increment(); //The expired entry was replaced
+        }
+        insertionOrder.add(created);
+        evict(now);
+
+        try {
+            loader.apply(key).whenComplete((value, exception) -> {
+                if (exception != null) {
+                    entries.remove(key, created);
+                    created.future.completeExceptionally(exception);
+                } else {
+                    created.future.complete(value);
+                }
+            });
+        } catch (RuntimeException e) {
+            entries.remove(key, created);
+            created.future.completeExceptionally(e);
+        }
+        return created.future;
+    }
+
+    public CacheStats getStats() {
+        return new CacheStats(hits.sum(), misses.sum(), evictions.sum(), entries.size());
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * Drops the oldest entries while they are expired, no longer in the map or over the maximum size
+     */
+    private void evict(long now) {
+        Entry<K, V> oldest;
+        while ((oldest = insertionOrder.peek()) != null) {
+            boolean stale = entries.get(oldest.key) != oldest;
+            if (!stale && !oldest.isExpired(now) && entries.size() <= maxSize) {
+                return;
+            }
+            if (insertionOrder.remove(oldest) && !stale && entries.remove(oldest.key, oldest)) {
+                evictions.increment();
+            }
+        }
+    }
+
+    private record Entry<K, V>(K key, CompletableFuture<V> future, long expiresAt) {
+
+        boolean isExpired(long now) {
+            return now - expiresAt >= 0;
+        }
+    }
+
+    /**
+     * Lookups served from the cache, lookups that started a load, entries dropped because they expired or the cache
+     * was full, and the current number of entries
+     */
+    public record CacheStats(long hits, long misses, long evictions, int size) {
+
+        public double hitRate() {
+            long lookups = hits + misses;
+            return lookups == 0 ? 0 : (double) hits / lookups;
+        }
+    }
+}
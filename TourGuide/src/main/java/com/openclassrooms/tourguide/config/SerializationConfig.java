@@ -0,0 +1,30 @@
+package com.openclassrooms.tourguide.config;
+
+import com.fasterxml.jackson.databind.Module;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import com.openclassrooms.tourguide.serialization.TourGuideJacksonModule;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.http.converter.smile.MappingJackson2SmileHttpMessageConverter;
+
+/**
+ * Responses are written as JSON, or as Smile, the binary form of JSON, when the request accepts
+ * application/x-jackson-smile. Both formats share the settings of the application object mapper and its serializers.
+ */
+@Configuration
+public class SerializationConfig {
+
+    @Bean
+    public Module tourGuideJacksonModule() {
+        return new TourGuideJacksonModule();
+    }
+
+    /**
+     * Replaces the Smile converter Spring MVC adds by default, whose mapper ignores the application settings
+     */
+    @Bean
+    public MappingJackson2SmileHttpMessageConverter smileHttpMessageConverter(Jackson2ObjectMapperBuilder builder) {
+        return new MappingJackson2SmileHttpMessageConverter(builder.factory(new SmileFactory()).build());
+    }
+}
@@ -1,5 +1,6 @@
 package com.openclassrooms.tourguide.config;
 
+import com.openclassrooms.tourguide.service.AttractionCatalog;
 import com.openclassrooms.tourguide.service.GpsUtilService;
 import com.openclassrooms.tourguide.service.RewardCentralService;
 import org.springframework.context.annotation.Bean;
@@ -17,9 +18,22 @@ public class TourGuideModule {
 		return new GpsUtil();
 	}
 	
+	/**
+	 * Rewards are calculated with the same library services as the rest of the application, sharing their concurrency
+	 * limits and reward points cache
+	 */
 	@Bean
-	public RewardsService getRewardsService() {
-		return new RewardsService(new GpsUtilService(getGpsUtil()), new RewardCentralService(getRewardCentral()));
+	public RewardsService getRewardsService(GpsUtilService gpsUtilService, RewardCentralService rewardCentralService,
+											AttractionCatalog attractionCatalog) {
+		return new RewardsService(gpsUtilService, rewardCentralService, attractionCatalog);
+	}
+
+	/**
+	 * The attractions of the application, their scheduled refresh is stopped when the application shuts down
+	 */
+	@Bean(destroyMethod = "shutdown")
+	public AttractionCatalog getAttractionCatalog(GpsUtilService gpsUtilService) {
+		return new AttractionCatalog(gpsUtilService);
 	}
 	
 	@Bean
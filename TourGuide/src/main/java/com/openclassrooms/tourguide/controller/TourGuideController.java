@@ -1,13 +1,33 @@
 package com.openclassrooms.tourguide.controller;
 
+import java.io.IOException;
+import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 import com.openclassrooms.tourguide.model.AttractionDistanceDTO;
+import com.openclassrooms.tourguide.model.User;
+import com.openclassrooms.tourguide.service.RewardStatistics;
+import com.openclassrooms.tourguide.service.RewardsService;
 import com.openclassrooms.tourguide.service.UserService;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.ExceptionHandler;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.ResponseStatus;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import gpsUtil.location.VisitedLocation;
 
@@ -16,13 +36,27 @@ import com.openclassrooms.tourguide.model.UserReward;
 
 import tripPricer.Provider;
 
+/**
+ * Endpoints calling the external libraries return a CompletableFuture, so the request thread is released while the
+ * calls are in flight. Those requests fail with a 504 status once they take longer than the timeout, which can be
+ * overridden with the system property tourguide.request-timeout-seconds, and the steps not started yet are skipped.
+ */
 @RestController
 public class TourGuideController {
 
+    private static final long REQUEST_TIMEOUT_SECONDS = Long.getLong("tourguide.request-timeout-seconds", 10);
+    private static final MediaType NDJSON = MediaType.parseMediaType("application/x-ndjson");
+    private static final int FLUSH_EVERY_LOCATIONS = 1000;
+    private final Logger logger = LoggerFactory.getLogger(TourGuideController.class);
+
     @Autowired
     TourGuideService tourGuideService;
     @Autowired
     UserService userService;
+    @Autowired
+    RewardsService rewardsService;
+    @Autowired
+    ObjectMapper objectMapper;
 
     @RequestMapping("/")
     public String index() {
@@ -30,14 +64,44 @@ public class TourGuideController {
     }
 
     @RequestMapping("/getLocation")
-    public VisitedLocation getLocation(@RequestParam String userName) {
-        return tourGuideService.getUserLocation(userService.getUser(userName));
+    public CompletableFuture<VisitedLocation> getLocation(@RequestParam String userName) {
+        return tourGuideService.getUserLocationAsync(userService.getUser(userName))
+                .orTimeout(REQUEST_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Streams the last location of every user as newline delimited JSON, one location per line, written as the users
+     * are read. Users without a location are skipped rather than tracked.
+     */
+    @RequestMapping("/getAllCurrentLocations")
+    public ResponseEntity<StreamingResponseBody> getAllCurrentLocations() {
+        ObjectWriter writer = objectMapper.writerFor(VisitedLocation.class)
+                .without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+        StreamingResponseBody body = outputStream -> {
+            try (JsonGenerator generator = objectMapper.getFactory().createGenerator(outputStream)) {
+                generator.setRootValueSeparator(null);
+                Iterator<VisitedLocation> locations = tourGuideService.getCurrentLocations().iterator();
+                for (int written = 1; locations.hasNext(); written++) {
+                    writer.writeValue(generator, locations.next());
+                    generator.writeRaw('\n');
+                    if (written % FLUSH_EVERY_LOCATIONS == 0) {
+                        generator.flush(); //Sends a chunk, the client reads the locations as they come
+                    }
+                }
+            } catch (IOException e) {
+                logger.error("Failed to stream the current locations : " + e.getMessage());
+                throw e;
+            }
+        };
+        return ResponseEntity.ok().contentType(NDJSON).body(body);
     }
 
     @RequestMapping("/getNearbyAttractions")
-    public List<AttractionDistanceDTO> getNearbyAttractions(@RequestParam String userName) {
-        VisitedLocation visitedLocation = tourGuideService.getUserLocation(userService.getUser(userName));
-        return tourGuideService.getNearByAttractions(visitedLocation, userService.getUser(userName)).join();
+    public CompletableFuture<List<AttractionDistanceDTO>> getNearbyAttractions(@RequestParam String userName) {
+        User user = userService.getUser(userName);
+        return tourGuideService.getUserLocationAsync(user)
+                .thenCompose(visitedLocation -> tourGuideService.getNearByAttractions(visitedLocation, user))
+                .orTimeout(REQUEST_TIMEOUT_SECONDS, TimeUnit.SECONDS);
     }
 
     @RequestMapping("/getRewards")
@@ -46,7 +110,30 @@ public class TourGuideController {
     }
 
     @RequestMapping("/getTripDeals")
-    public List<Provider> getTripDeals(@RequestParam String userName) {
-        return tourGuideService.getTripDeals(userService.getUser(userName));
+    public CompletableFuture<List<Provider>> getTripDeals(@RequestParam String userName) {
+        return tourGuideService.getTripDealsAsync(userService.getUser(userName))
+                .orTimeout(REQUEST_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+    }
+
+    @RequestMapping("/getTopUsers")
+    public List<RewardStatistics.UserRanking> getTopUsers(@RequestParam(defaultValue = "10") int limit) {
+        return rewardsService.getRewardStatistics().getTopUsers(limit);
+    }
+
+    @RequestMapping("/getTopAttractions")
+    public List<RewardStatistics.AttractionRewards> getTopAttractions(@RequestParam(defaultValue = "5") int limit) {
+        return rewardsService.getRewardStatistics().getTopAttractions(limit);
+    }
+
+    @RequestMapping("/getRewardPointsDistribution")
+    public List<RewardStatistics.PointsBucket> getRewardPointsDistribution() {
+        return rewardsService.getRewardStatistics().getRewardPointsDistribution();
+    }
+
+    @ExceptionHandler(TimeoutException.class)
+    @ResponseStatus(HttpStatus.GATEWAY_TIMEOUT)
+    public String handleTimeout(TimeoutException e) {
+        logger.error("Request timed out after " + REQUEST_TIMEOUT_SECONDS + " seconds");
+        return "Request timed out";
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,192 @@
+package com.openclassrooms.tourguide.limit;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Concurrency limit adjusted from the latency of the calls, after the gradient limit of Netflix concurrency-limits.
+ * <p>
+ * Latency samples are averaged over windows of about one round of calls. Two moving averages of the window latency
+ * are kept: a short one following the latest windows, and a long one acting as the baseline of a healthy dependency.
+ * While the short average stays within a tolerance of the baseline the limit grows by a fraction of its square root
+ * per window, and when latency rises above it the limit shrinks in proportion. A window with a failed call cuts the
+ * limit by a fixed ratio instead, as in AIMD. The limit only moves when at least half of it is in use, so that an idle
+ * dependency keeps its limit. The limit always stays between its minimum and maximum.
+ * <p>
+ * Permits can be acquired without waiting: when none is available the caller gets a future completed once a permit
+ * is handed to it, in the order of the requests, so no thread is parked while waiting.
+ */
+public class AdaptiveLimiter {
+
+    private static final double SMOOTHING = 0.2;
+    private static final double RTT_TOLERANCE = 1.5;
+    private static final double SHORT_WINDOWS = 2;
+    private static final double LONG_WINDOWS = 100;
+    private static final double BACKOFF_RATIO = 0.9;
+    private static final int MIN_WINDOW_SAMPLES = 10;
+    private static final CompletableFuture<Void> GRANTED = CompletableFuture.completedFuture(null);
+
+    private final int minLimit;
+    private final int maxLimit;
+    private final ArrayDeque<CompletableFuture<Void>> waiters = new ArrayDeque<>();
+    private double limit;
+    private int inflight;
+    private double shortRtt; // nanoseconds, 0 until the first window
+    private double longRtt;
+    private int windowSamples;
+    private double windowRttSum;
+    private boolean windowDropped;
+    private int windowMaxInflight; // most permits in use at once during the window
+
+    /**
+     * @param initialLimit limit until the first latency samples
+     * @param minLimit     lowest limit, the limit never shrinks below it
+     * @param maxLimit     highest limit, the limit never grows above it
+     */
+    public AdaptiveLimiter(int initialLimit, int minLimit, int maxLimit) {
+        if (minLimit < 1 || minLimit > initialLimit || initialLimit > maxLimit) {
+            throw new IllegalArgumentException("Limits must be positive, with min <= initial <= max");
+        }
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.limit = initialLimit;
+    }
+
+    /**
+     * @return a limiter whose limit never changes
+     */
+    public static AdaptiveLimiter fixed(int limit) {
+        return new AdaptiveLimiter(limit, limit, limit);
+    }
+
+    /**
+     * @return true if a permit was acquired, which must be released once the call is done
+     */
+    public synchronized boolean tryAcquire() {
+        if (inflight < getLimit() && waiters.isEmpty()) {
+            acquired();
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Acquires a permit without waiting for it. A caller giving up before the future is completed cancels it, and must
+     * release the permit if the cancellation fails because it was just granted.
+     *
+     * @return a completable future completed once the permit is acquired, right away if one is available
+     */
+    public CompletableFuture<Void> acquire() {
+        synchronized (this) {
+            if (inflight < getLimit() && waiters.isEmpty()) {
+                acquired();
+                return GRANTED;
+            }
+            CompletableFuture<Void> waiter = new CompletableFuture<>();
+            waiters.add(waiter);
+            return waiter;
+        }
+    }
+
+    /**
+     * Releases a permit and adds the latency of the call to the current window
+     *
+     * @param rttNanos time the call took
+     * @param dropped  true if the call failed, which shrinks the limit
+     */
+    public void release(long rttNanos, boolean dropped) {
+        synchronized (this) {
+            inflight--;
+            sample(rttNanos, dropped);
+        }
+        grantWaiters();
+    }
+
+    /**
+     * Releases a permit without a latency sample, for a call that did not run
+     */
+    public void release() {
+        synchronized (this) {
+            inflight--;
+        }
+        grantWaiters();
+    }
+
+    public synchronized int getLimit() {
+        return (int) limit;
+    }
+
+    public synchronized int getInflight() {
+        return inflight;
+    }
+
+    public synchronized int getQueued() {
+        return waiters.size();
+    }
+
+    public int getMinLimit() {
+        return minLimit;
+    }
+
+    public int getMaxLimit() {
+        return maxLimit;
+    }
+
+    /**
+     * Hands the available permits to the waiters, out of the lock since completing a waiter runs its continuations
+     */
+    private void grantWaiters() {
+        while (true) {
+            CompletableFuture<Void> waiter;
+            synchronized (this) {
+                if (waiters.isEmpty() || inflight >= getLimit()) {
+                    return;
+                }
+                waiter = waiters.poll();
+                acquired();
+            }
+            if (!waiter.complete(null)) { //Cancelled by its caller, the permit goes to the next waiter
+                synchronized (this) {
+                    inflight--;
+                }
+            }
+        }
+    }
+
+    private void acquired() {
+        inflight++;
+        windowMaxInflight = Math.max(windowMaxInflight, inflight);
+    }
+
+    private void sample(long rttNanos, boolean dropped) {
+        windowSamples++;
+        windowRttSum += Math.max(1, rttNanos);
+        windowDropped |= dropped;
+        if (windowSamples < Math.max(MIN_WINDOW_SAMPLES, getLimit())) {
+            return;
+        }
+        double rtt = windowRttSum / windowSamples;
+        boolean backOff = windowDropped;
+        int maxInflight = windowMaxInflight;
+        windowSamples = 0;
+        windowRttSum = 0;
+        windowDropped = false;
+        windowMaxInflight = inflight;
+
+        shortRtt = shortRtt == 0 ? rtt : shortRtt + (rtt - shortRtt) / SHORT_WINDOWS;
+        longRtt = longRtt == 0 ? rtt : longRtt + (rtt - longRtt) / LONG_WINDOWS;
+        if (longRtt > 2 * shortRtt) {
+            longRtt *= 0.95; //The latency dropped well below the baseline, let the baseline follow it down
+        }
+        if (backOff) {
+            limit = Math.max(minLimit, limit * BACKOFF_RATIO);
+            return;
+        }
+        if (maxInflight < limit / 2) {
+            return; //Too few calls to tell whether the dependency could take more
+        }
+        double gradient = Math.max(0.5, Math.min(1.0, RTT_TOLERANCE * longRtt / shortRtt));
+        double newLimit = limit * gradient + Math.sqrt(limit);
+        limit = Math.max(minLimit, Math.min(maxLimit, limit * (1 - SMOOTHING) + newLimit * SMOOTHING));
+    }
+}
@@ -8,9 +8,9 @@ public class AttractionDistanceDTO {
     private Location attractionLocation;
     private Location userLocation;
     private Double distance;
-    private int rewardPoints;
+    private Integer rewardPoints; // null when the points could not be fetched in time
 
-    public AttractionDistanceDTO(String attractionName, Location attractionLocation, Location userLocation, Double distance, int rewardPoints) {
+    public AttractionDistanceDTO(String attractionName, Location attractionLocation, Location userLocation, Double distance, Integer rewardPoints) {
         this.attractionName = attractionName;
         this.attractionLocation = attractionLocation;
         this.userLocation = userLocation;
@@ -50,11 +50,11 @@ public class AttractionDistanceDTO {
         this.distance = distance;
     }
 
-    public int getRewardPoints() {
+    public Integer getRewardPoints() {
         return rewardPoints;
     }
 
-    public void setRewardPoints(int rewardPoints) {
+    public void setRewardPoints(Integer rewardPoints) {
         this.rewardPoints = rewardPoints;
     }
 
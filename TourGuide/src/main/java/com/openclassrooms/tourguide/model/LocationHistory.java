@@ -0,0 +1,159 @@
+package com.openclassrooms.tourguide.model;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.UUID;
+
+import gpsUtil.location.Location;
+import gpsUtil.location.VisitedLocation;
+
+/**
+ * Visited locations of one user, stored as columns of primitives instead of one VisitedLocation, Location and Date
+ * object per entry. Once the history holds its maximum number of locations, each new location replaces the oldest one.
+ * <p>
+ * Every location gets a sequence number in the order it was added, which keeps counting when old locations are
+ * dropped, so callers can ask for the locations added after a given point.
+ * VisitedLocation objects are only created when read, with the id of the owning user.
+ */
+public class LocationHistory {
+
+    /**
+     * Default maximum number of locations kept per user, can be overridden with the system property
+     * tourguide.location-history.max-size
+     */
+    public static final int DEFAULT_MAX_SIZE = Integer.getInteger("tourguide.location-history.max-size", 10000);
+    private static final int INITIAL_CAPACITY = 4;
+
+    private final UUID userId;
+    private final int maxSize;
+    private double[] latitudes = new double[0];
+    private double[] longitudes = new double[0];
+    private long[] times = new long[0];
+    private int oldest; // slot of the oldest location
+    private int size;
+    private long addedCount; // sequence number of the next location
+    private final List<VisitedLocation> view = new View();
+
+    public LocationHistory(UUID userId) {
+        this(userId, DEFAULT_MAX_SIZE);
+    }
+
+    public LocationHistory(UUID userId, int maxSize) {
+        if (maxSize < 1) {
+            throw new IllegalArgumentException("Location history size must be positive");
+        }
+        this.userId = userId;
+        this.maxSize = maxSize;
+    }
+
+    public synchronized void add(VisitedLocation visitedLocation) {
+        int slot;
+        if (size == maxSize) { //Replace the oldest location
+            slot = oldest;
+            oldest = (oldest + 1) % latitudes.length;
+        } else {
+            if (size == latitudes.length) {
+                grow();
+            }
+            slot = (oldest + size) % latitudes.length;
+            size++;
+        }
+        latitudes[slot] = visitedLocation.location.latitude;
+        longitudes[slot] = visitedLocation.location.longitude;
+        times[slot] = visitedLocation.timeVisited.getTime();
+        addedCount++;
+    }
+
+    public synchronized VisitedLocation get(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index " + index + " out of bounds for length " + size);
+        }
+        return toVisitedLocation((oldest + index) % latitudes.length);
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    /**
+     * @return the number of locations added since the history was created or cleared, including dropped ones
+     */
+    public synchronized long getAddedCount() {
+        return addedCount;
+    }
+
+    /**
+     * Returns the locations whose sequence number is between from (inclusive) and to (exclusive). Locations already
+     * dropped from the history are skipped.
+     */
+    public synchronized List<VisitedLocation> getRange(long from, long to) {
+        long first = Math.max(from, addedCount - size);
+        long last = Math.min(to, addedCount);
+        List<VisitedLocation> locations = new ArrayList<>((int) Math.max(0, last - first));
+        for (long sequence = first; sequence < last; sequence++) {
+            int index = (int) (sequence - (addedCount - size));
+            locations.add(toVisitedLocation((oldest + index) % latitudes.length));
+        }
+        return locations;
+    }
+
+    /**
+     * @return all the locations kept, with the number of locations added when they were read
+     */
+    public synchronized Snapshot snapshot() {
+        return new Snapshot(getRange(0, addedCount), addedCount);
+    }
+
+    public synchronized void clear() {
+        size = 0;
+        oldest = 0;
+        addedCount = 0;
+    }
+
+    /**
+     * @return a read only list backed by this history, each read creates a new VisitedLocation
+     */
+    public List<VisitedLocation> asList() {
+        return view;
+    }
+
+    private void grow() {
+        int capacity = (int) Math.min(maxSize, Math.max(INITIAL_CAPACITY, latitudes.length * 2L));
+        double[] grownLatitudes = new double[capacity];
+        double[] grownLongitudes = new double[capacity];
+        long[] grownTimes = new long[capacity];
+        //Copy from the oldest location so the history starts at slot 0 again
+        for (int i = 0; i < size; i++) {
+            int slot = (oldest + i) % latitudes.length;
+            grownLatitudes[i] = latitudes[slot];
+            grownLongitudes[i] = longitudes[slot];
+            grownTimes[i] = times[slot];
+        }
+        latitudes = grownLatitudes;
+        longitudes = grownLongitudes;
+        times = grownTimes;
+        oldest = 0;
+    }
+
+    private VisitedLocation toVisitedLocation(int slot) {
+        return new VisitedLocation(userId, new Location(latitudes[slot], longitudes[slot]), new Date(times[slot]));
+    }
+
+    private class View extends AbstractList<VisitedLocation> {
+
+        @Override
+        public VisitedLocation get(int index) {
+            return LocationHistory.this.get(index);
+        }
+
+        @Override
+        public int size() {
+            return LocationHistory.this.size();
+        }
+    }
+
+    public record Snapshot(List<VisitedLocation> locations, long addedCount) {
+    }
+}
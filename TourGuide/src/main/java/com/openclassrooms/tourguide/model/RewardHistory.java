@@ -0,0 +1,153 @@
+package com.openclassrooms.tourguide.model;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.UUID;
+
+import gpsUtil.location.Attraction;
+import gpsUtil.location.Location;
+import gpsUtil.location.VisitedLocation;
+
+/**
+ * User rewards of one user, at most one per attraction, keyed by the attraction ordinal of the
+ * {@link com.openclassrooms.tourguide.repository.AttractionRegistry}.
+ * <p>
+ * The rewarded ordinals are a bit set, and the points are an int array indexed by ordinal. The visited location of
+ * each reward is stored in columns of primitives in the order rewards were added. UserReward objects are only
+ * created when read.
+ * <p>
+ * Checking whether an attraction is rewarded reads the bit set without locking: a new reward publishes a new copy of
+ * the bit set once everything else is written. Adding a reward and setting points lock the history, which happens at
+ * most once per attraction.
+ * <p>
+ * The total of the points is kept up to date by both, so that it is read without locking or summing the rewards.
+ */
+public class RewardHistory {
+
+    private static final int INITIAL_CAPACITY = 4;
+
+    private final UUID userId;
+    private volatile long[] rewarded = new long[0]; // one bit per attraction ordinal
+    private int[] points = new int[0]; // by attraction ordinal
+    private volatile int totalPoints; // written with the lock held
+    private int size;
+    // Columns in the order rewards were added
+    private int[] ordinals = new int[0];
+    private Attraction[] attractions = new Attraction[0];
+    private double[] latitudes = new double[0];
+    private double[] longitudes = new double[0];
+    private long[] times = new long[0];
+
+    public RewardHistory(UUID userId) {
+        this.userId = userId;
+    }
+
+    /**
+     * @return true if the attraction with this ordinal has already been rewarded
+     */
+    public boolean contains(int ordinal) {
+        long[] words = rewarded;
+        int word = ordinal >>> 6;
+        return word < words.length && (words[word] & (1L << ordinal)) != 0;
+    }
+
+    /**
+     * Adds the user reward unless the attraction has already been rewarded
+     *
+     * @return true if the user reward was added
+     */
+    public synchronized boolean add(UserReward reward) {
+        int ordinal = reward.getAttractionOrdinal();
+        if (ordinal < 0) {
+            throw new IllegalArgumentException("Attraction ordinal must not be negative");
+        }
+        if (contains(ordinal)) {
+            return false;
+        }
+        if (size == ordinals.length) {
+            grow();
+        }
+        ordinals[size] = ordinal;
+        attractions[size] = reward.attraction;
+        latitudes[size] = reward.visitedLocation.location.latitude;
+        longitudes[size] = reward.visitedLocation.location.longitude;
+        times[size] = reward.visitedLocation.timeVisited.getTime();
+        size++;
+        if (ordinal >= points.length) {
+            points = Arrays.copyOf(points, ordinal + 1);
+        }
+        points[ordinal] = reward.getRewardPoints();
+        totalPoints += reward.getRewardPoints();
+
+        long[] words = Arrays.copyOf(rewarded, Math.max(rewarded.length, (ordinal >>> 6) + 1));
+        words[ordinal >>> 6] |= 1L << ordinal;
+        rewarded = words; //Published last, so a reward seen as added is complete
+        return true;
+    }
+
+    /**
+     * Sets the points of the rewarded attraction with this ordinal
+     *
+     * @return false if the attraction has not been rewarded
+     */
+    public synchronized boolean setRewardPoints(int ordinal, int rewardPoints) {
+        if (!contains(ordinal)) {
+            return false;
+        }
+        totalPoints += rewardPoints - points[ordinal];
+        points[ordinal] = rewardPoints;
+        return true;
+    }
+
+    public synchronized int getRewardPoints(int ordinal) {
+        return contains(ordinal) ? points[ordinal] : 0;
+    }
+
+    /**
+     * @return the attraction of the user reward with this ordinal, or null if it has not been rewarded
+     */
+    public synchronized Attraction getAttraction(int ordinal) {
+        for (int i = 0; i < size; i++) {
+            if (ordinals[i] == ordinal) {
+                return attractions[i];
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return the sum of the points of all the user rewards
+     */
+    public int getTotalPoints() {
+        return totalPoints;
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    /**
+     * @return a read only copy of the user rewards, in the order they were added
+     */
+    public synchronized List<UserReward> asList() {
+        List<UserReward> rewards = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            VisitedLocation visitedLocation = new VisitedLocation(userId, new Location(latitudes[i], longitudes[i]),
+                    new Date(times[i]));
+            rewards.add(new UserReward(ordinals[i], visitedLocation, attractions[i], points[ordinals[i]]));
+        }
+        return Collections.unmodifiableList(rewards);
+    }
+
+    private void grow() {
+        int capacity = Math.max(INITIAL_CAPACITY, ordinals.length * 2);
+        ordinals = Arrays.copyOf(ordinals, capacity);
+        attractions = Arrays.copyOf(attractions, capacity);
+        latitudes = Arrays.copyOf(latitudes, capacity);
+        longitudes = Arrays.copyOf(longitudes, capacity);
+        times = Arrays.copyOf(times, capacity);
+    }
+}
@@ -4,6 +4,10 @@ import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
 
 import gpsUtil.location.VisitedLocation;
 import tripPricer.Provider;
@@ -14,16 +18,28 @@ public class User {
     private String phoneNumber;
     private String emailAddress;
     private Date latestLocationTimestamp;
-    private List<VisitedLocation> visitedLocations = new ArrayList<>();
-    private List<UserReward> userRewards = new ArrayList<>();
+    private final LocationHistory visitedLocations;
+    private final RewardHistory userRewards;
     private UserPreferences userPreferences = new UserPreferences();
     private List<Provider> tripDeals = new ArrayList<>();
+    // Number of visited locations already checked for rewards
+    private final AtomicLong processedLocationCount = new AtomicLong();
+    // Incremented by every change kept by the user store, to find the users changed since the last checkpoint
+    private final AtomicLong revision = new AtomicLong();
+    private volatile long checkpointedRevision = -1;
+    // Completed once the reward points lookups started so far are done
+    private final AtomicReference<CompletableFuture<Void>> pendingRewardPoints =
+            new AtomicReference<>(CompletableFuture.completedFuture(null));
+    // Notified of new locations and rewards once they are added, null when nobody listens
+    private volatile Consumer<UserEvent> eventListener;
 
     public User(UUID userId, String userName, String phoneNumber, String emailAddress) {
         this.userId = userId;
         this.userName = userName;
         this.phoneNumber = phoneNumber;
         this.emailAddress = emailAddress;
+        visitedLocations = new LocationHistory(userId);
+        userRewards = new RewardHistory(userId);
     }
 
     public UUID getUserId() {
@@ -36,6 +52,7 @@ public class User {
 
     public void setPhoneNumber(String phoneNumber) {
         this.phoneNumber = phoneNumber;
+        revision.incrementAndGet();
     }
 
     public String getPhoneNumber() {
@@ -44,6 +61,7 @@ public class User {
 
     public void setEmailAddress(String emailAddress) {
         this.emailAddress = emailAddress;
+        revision.incrementAndGet();
     }
 
     public String getEmailAddress() {
@@ -52,6 +70,7 @@ public class User {
 
     public void setLatestLocationTimestamp(Date latestLocationTimestamp) {
         this.latestLocationTimestamp = latestLocationTimestamp;
+        revision.incrementAndGet();
     }
 
     public Date getLatestLocationTimestamp() {
@@ -60,24 +79,130 @@ public class User {
 
     public void addToVisitedLocations(VisitedLocation visitedLocation) {
         visitedLocations.add(visitedLocation);
+        revision.incrementAndGet();
+        publish(UserEvent.LocationAdded.of(visitedLocation));
     }
 
+    /**
+     * @return a read only view of the visited locations, from the oldest one kept
+     */
     public List<VisitedLocation> getVisitedLocations() {
-        return visitedLocations;
+        return visitedLocations.asList();
     }
 
     public void clearVisitedLocations() {
         visitedLocations.clear();
+        processedLocationCount.set(0);
+        revision.incrementAndGet();
     }
 
-    public synchronized void addUserReward(UserReward userReward) {
-        if (userRewards.stream().filter(r -> r.attraction.attractionName.equals(userReward.attraction)).count() == 0) {
-            userRewards.add(userReward);
+    /**
+     * Marks all visited locations as processed for rewards
+     *
+     * @return the locations added since the previous call, that are left to the caller
+     */
+    public List<VisitedLocation> claimUnprocessedLocations() {
+        long addedCount = visitedLocations.getAddedCount();
+        long processed = processedLocationCount.getAndAccumulate(addedCount, Math::max);
+        if (processed >= addedCount) {
+            return List.of();
         }
+        revision.incrementAndGet();
+        return visitedLocations.getRange(processed, addedCount);
     }
 
+    /**
+     * @return the number of visited locations not processed for rewards yet
+     */
+    public long getUnprocessedLocationCount() {
+        return Math.max(0, visitedLocations.getAddedCount() - processedLocationCount.get());
+    }
+
+    /**
+     * @return a copy of the visited locations with the number of them not processed for rewards yet, read together so
+     * that a location added meanwhile is never counted as processed
+     */
+    public LocationsSnapshot snapshotVisitedLocations() {
+        long processed = processedLocationCount.get(); //Read first, a location claimed meanwhile is only checked again
+        LocationHistory.Snapshot snapshot = visitedLocations.snapshot();
+        long unprocessed = Math.max(0, snapshot.addedCount() - processed);
+        return new LocationsSnapshot(snapshot.locations(), Math.min(unprocessed, snapshot.locations().size()));
+    }
+
+    /**
+     * Marks all visited locations but the given number of latest ones as processed for rewards, to restore a user
+     */
+    public void setUnprocessedLocationCount(long unprocessedLocationCount) {
+        processedLocationCount.set(Math.max(0, visitedLocations.getAddedCount() - unprocessedLocationCount));
+        revision.incrementAndGet();
+    }
+
+    /**
+     * Adds the user reward unless the user already has one for the same attraction
+     *
+     * @return true if the user reward was added
+     */
+    public boolean addUserReward(UserReward userReward) {
+        if (!userRewards.add(userReward)) {
+            return false;
+        }
+        revision.incrementAndGet();
+        publish(UserEvent.RewardAdded.of(userId, userReward));
+        return true;
+    }
+
+    /**
+     * @param attractionOrdinal ordinal of the attraction in the attraction registry
+     * @return true if the user already has a user reward for the attraction
+     */
+    public boolean isRewarded(int attractionOrdinal) {
+        return userRewards.contains(attractionOrdinal);
+    }
+
+    /**
+     * Sets the points of the user reward for the attraction
+     *
+     * @param attractionOrdinal ordinal of the attraction in the attraction registry
+     */
+    public void setRewardPoints(int attractionOrdinal, int rewardPoints) {
+        if (userRewards.setRewardPoints(attractionOrdinal, rewardPoints)) {
+            revision.incrementAndGet();
+            publish(new UserEvent.RewardPointsSet(userId, attractionOrdinal, userRewards.getAttraction(attractionOrdinal),
+                    rewardPoints));
+        }
+    }
+
+    /**
+     * @return the sum of the points of the user rewards, without copying them
+     */
+    public int getRewardPointsTotal() {
+        return userRewards.getTotalPoints();
+    }
+
+    /**
+     * Adds a lookup of reward points to the ones awaited by {@link #getPendingRewardPoints()}
+     *
+     * @param lookup completed once the points are set, successfully or not
+     */
+    public void addPendingRewardPoints(CompletableFuture<?> lookup) {
+        CompletableFuture<Void> settled = lookup.handle((result, exception) -> null);
+        pendingRewardPoints.accumulateAndGet(settled,
+                (pending, added) -> pending.isDone() ? added : CompletableFuture.allOf(pending, added));
+    }
+
+    /**
+     * @return a completable future completed once all the reward points lookups started so far are done, whether they
+     * succeeded or not
+     */
+    public CompletableFuture<Void> getPendingRewardPoints() {
+        return pendingRewardPoints.get();
+    }
+
+    /**
+     * @return a read only copy of the user rewards, setting points on it does not change the user
+     */
     public List<UserReward> getUserRewards() {
-        return userRewards;
+        return userRewards.asList();
     }
 
     public UserPreferences getUserPreferences() {
@@ -86,6 +211,7 @@ public class User {
 
     public void setUserPreferences(UserPreferences userPreferences) {
         this.userPreferences = userPreferences;
+        revision.incrementAndGet();
     }
 
     public VisitedLocation getLastVisitedLocation() {
@@ -100,4 +226,42 @@ public class User {
         return tripDeals;
     }
 
+    /**
+     * @return a number that changes whenever a state kept by the user store changes, trip deals are not kept
+     */
+    public long getRevision() {
+        return revision.get();
+    }
+
+    /**
+     * @return the revision of the user in the latest checkpoint, -1 if the user has never been checkpointed
+     */
+    public long getCheckpointedRevision() {
+        return checkpointedRevision;
+    }
+
+    public void setCheckpointedRevision(long checkpointedRevision) {
+        this.checkpointedRevision = checkpointedRevision;
+    }
+
+    /**
+     * @param eventListener called on the thread changing the user once a location or a reward is added, or points are
+     *                      set, null to stop listening
+     */
+    public void setEventListener(Consumer<UserEvent> eventListener) {
+        this.eventListener = eventListener;
+    }
+
+    private void publish(UserEvent event) {
+        Consumer<UserEvent> listener = eventListener;
+        if (listener != null) {
+            listener.accept(event);
+        }
+    }
+
+    /**
+     * Visited locations of a user, the unprocessed ones being the latest ones
+     */
+    public record LocationsSnapshot(List<VisitedLocation> visitedLocations, long unprocessedLocationCount) {
+    }
 }
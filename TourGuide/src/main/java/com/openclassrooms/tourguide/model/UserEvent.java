@@ -0,0 +1,55 @@
+package com.openclassrooms.tourguide.model;
+
+import java.util.Date;
+import java.util.UUID;
+
+import gpsUtil.location.Attraction;
+import gpsUtil.location.Location;
+import gpsUtil.location.VisitedLocation;
+
+/**
+ * Change of the locations or rewards of a user, reported to the event listener of the user so it can be logged and
+ * replayed after a crash.
+ * <p>
+ * Reward events hold their attraction along with its ordinal, since a replay after a restart maps the attraction to
+ * the ordinal of the registry of the new run.
+ */
+public sealed interface UserEvent {
+
+    UUID userId();
+
+    record LocationAdded(UUID userId, double latitude, double longitude, long time) implements UserEvent {
+
+        public static LocationAdded of(VisitedLocation visitedLocation) {
+            return new LocationAdded(visitedLocation.userId, visitedLocation.location.latitude,
+                    visitedLocation.location.longitude, visitedLocation.timeVisited.getTime());
+        }
+
+        public VisitedLocation toVisitedLocation() {
+            return new VisitedLocation(userId, new Location(latitude, longitude), new Date(time));
+        }
+    }
+
+    /**
+     * A user reward, with the attraction and the visited location it was given for
+     */
+    record RewardAdded(UUID userId, int attractionOrdinal, Attraction attraction, LocationAdded location,
+                       int rewardPoints) implements UserEvent {
+
+        public static RewardAdded of(UUID userId, UserReward userReward) {
+            return new RewardAdded(userId, userReward.getAttractionOrdinal(), userReward.attraction,
+                    LocationAdded.of(userReward.visitedLocation), userReward.getRewardPoints());
+        }
+
+        /**
+         * @param currentOrdinal ordinal of the attraction in the registry the user reward is replayed against
+         */
+        public UserReward toUserReward(int currentOrdinal) {
+            return new UserReward(currentOrdinal, location.toVisitedLocation(), attraction, rewardPoints);
+        }
+    }
+
+    record RewardPointsSet(UUID userId, int attractionOrdinal, Attraction attraction, int rewardPoints)
+            implements UserEvent {
+    }
+}
@@ -1,5 +1,7 @@
 package com.openclassrooms.tourguide.model;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
+
 import gpsUtil.location.Attraction;
 import gpsUtil.location.VisitedLocation;
 
@@ -7,22 +9,30 @@ public class UserReward {
 
 	public final VisitedLocation visitedLocation;
 	public final Attraction attraction;
-	private int rewardPoints;
-	public UserReward(VisitedLocation visitedLocation, Attraction attraction, int rewardPoints) {
+	private final int attractionOrdinal;
+	private final int rewardPoints;
+	public UserReward(int attractionOrdinal, VisitedLocation visitedLocation, Attraction attraction, int rewardPoints) {
+		this.attractionOrdinal = attractionOrdinal;
 		this.visitedLocation = visitedLocation;
 		this.attraction = attraction;
 		this.rewardPoints = rewardPoints;
 	}
 	
-	public UserReward(VisitedLocation visitedLocation, Attraction attraction) {
-		this.visitedLocation = visitedLocation;
-		this.attraction = attraction;
+	/**
+	 * @param attractionOrdinal ordinal of the attraction in the attraction registry
+	 */
+	public UserReward(int attractionOrdinal, VisitedLocation visitedLocation, Attraction attraction) {
+		this(attractionOrdinal, visitedLocation, attraction, 0);
 	}
 
-	public void setRewardPoints(int rewardPoints) {
-		this.rewardPoints = rewardPoints;
+	@JsonIgnore
+	public int getAttractionOrdinal() {
+		return attractionOrdinal;
 	}
-	
+
+	/**
+	 * @return the points of the user reward when it was read, they are changed with {@link User#setRewardPoints}
+	 */
 	public int getRewardPoints() {
 		return rewardPoints;
 	}
@@ -0,0 +1,115 @@
+package com.openclassrooms.tourguide.repository;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.IntStream;
+
+import gpsUtil.location.Attraction;
+
+/**
+ * Gives every attraction a dense int ordinal, its position in the list the registry was loaded from.
+ * <p>
+ * Ordinals let per user state be stored in arrays and bit sets indexed by attraction, instead of hashing attraction
+ * names or ids. Attractions are registered by name, since gpsUtil returns new ids on every call.
+ * <p>
+ * A registry is immutable. {@link #update(List)} registers a newer list of attractions in a new registry that keeps
+ * every ordinal: an attraction removed from the list keeps its ordinal, so existing user rewards still point to it,
+ * but is no longer active. {@link #registerInactive(Attraction)} registers an attraction only known from stored
+ * user rewards the same way.
+ */
+public class AttractionRegistry {
+
+    private final List<Attraction> attractions;
+    private final boolean[] active;
+    private final Map<String, Integer> ordinalsByName = new HashMap<>();
+
+    public AttractionRegistry(List<Attraction> attractions) {
+        this(attractions, activeAll(attractions.size()));
+    }
+
+    private AttractionRegistry(List<Attraction> attractions, boolean[] active) {
+        this.attractions = List.copyOf(attractions);
+        this.active = active;
+        for (int ordinal = 0; ordinal < this.attractions.size(); ordinal++) {
+            if (ordinalsByName.putIfAbsent(this.attractions.get(ordinal).attractionName, ordinal) != null) {
+                throw new IllegalArgumentException("Duplicate attraction " + this.attractions.get(ordinal).attractionName);
+            }
+        }
+    }
+
+    /**
+     * @param latest attractions, the active ones of the new registry
+     * @return a registry where attractions already registered keep their ordinal with their latest values, and new
+     * attractions get the next ordinals
+     */
+    public AttractionRegistry update(List<Attraction> latest) {
+        List<Attraction> updated = new ArrayList<>(attractions);
+        boolean[] updatedActive = new boolean[attractions.size() + latest.size()];
+        for (Attraction attraction : latest) {
+            int ordinal = ordinalOf(attraction.attractionName);
+            if (ordinal < 0) {
+                ordinal = updated.size();
+                updated.add(attraction);
+            } else {
+                updated.set(ordinal, attraction);
+            }
+            if (updatedActive[ordinal]) {
+                throw new IllegalArgumentException("Duplicate attraction " + attraction.attractionName);
+            }
+            updatedActive[ordinal] = true;
+        }
+        return new AttractionRegistry(updated, Arrays.copyOf(updatedActive, updated.size()));
+    }
+
+    /**
+     * @param attraction attraction not registered yet, such as one of restored user rewards that is no longer listed
+     * @return a registry where the attraction gets the next ordinal without being active
+     */
+    public AttractionRegistry registerInactive(Attraction attraction) {
+        List<Attraction> updated = new ArrayList<>(attractions);
+        updated.add(attraction);
+        return new AttractionRegistry(updated, Arrays.copyOf(active, updated.size()));
+    }
+
+    public Attraction get(int ordinal) {
+        return attractions.get(ordinal);
+    }
+
+    /**
+     * @return the ordinal of the attraction with this name, or -1 if it is not registered
+     */
+    public int ordinalOf(String attractionName) {
+        return ordinalsByName.getOrDefault(attractionName, -1);
+    }
+
+    /**
+     * @return all attractions, in ordinal order, including the ones no longer active
+     */
+    public List<Attraction> getAttractions() {
+        return attractions;
+    }
+
+    public boolean isActive(int ordinal) {
+        return active[ordinal];
+    }
+
+    /**
+     * @return the ordinals of the active attractions, in ascending order
+     */
+    public int[] getActiveOrdinals() {
+        return IntStream.range(0, active.length).filter(ordinal -> active[ordinal]).toArray();
+    }
+
+    public int size() {
+        return attractions.size();
+    }
+
+    private static boolean[] activeAll(int size) {
+        boolean[] active = new boolean[size];
+        Arrays.fill(active, true);
+        return active;
+    }
+}
@@ -0,0 +1,373 @@
+package com.openclassrooms.tourguide.repository;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.openclassrooms.tourguide.model.UserEvent;
+
+import gpsUtil.location.Attraction;
+
+/**
+ * User event log appending to segment files in a directory.
+ * <p>
+ * Events are queued in a bounded queue and written by a single writer thread, which takes all the queued events at
+ * once, writes them with one FileChannel write and forces them to disk with one fsync. While a batch is being forced,
+ * the next events pile up in the queue and are committed together, so the number of fsyncs follows the disk rather than
+ * the number of events. Events are dropped, and counted, when the queue is full.
+ * <p>
+ * A segment is named after the sequence number of its first event, and a new segment is started once the current one
+ * exceeds its maximum size, so that segments fully covered by a checkpoint can be deleted. Each record holds its length
+ * and CRC-32, replay stops reading a segment at the first torn or corrupted record.
+ * <p>
+ * Publishes the metrics tourguide.event-log.written, tourguide.event-log.dropped, tourguide.event-log.queued and
+ * tourguide.event-log.commit (time spent writing and forcing each batch).
+ */
+public class FileUserEventLog implements UserEventLog {
+
+    public static final long DEFAULT_SEGMENT_BYTES = 64L * 1024 * 1024;
+    public static final int DEFAULT_QUEUE_CAPACITY = 1 << 20;
+    private static final int MAX_BATCH_SIZE = 16384;
+    private static final int RECORD_HEADER_BYTES = 2 * Integer.BYTES; // length and checksum of the body
+    private static final byte LOCATION_ADDED = 1;
+    private static final byte REWARD_ADDED = 2;
+    private static final byte REWARD_POINTS_SET = 3;
+    private static final Pattern FILE_NAME = Pattern.compile("events-(\\d+)\\.log");
+
+    private final Logger logger = LoggerFactory.getLogger(FileUserEventLog.class);
+    private final Path directory;
+    private final long segmentBytes;
+    private final BlockingQueue<UserEvent> queue;
+    private final Thread writer;
+    private final Counter written = Counter.builder("tourguide.event-log.written")
+            .description("User events written to the event log")
+            .register(Metrics.globalRegistry);
+    private final Counter dropped = Counter.builder("tourguide.event-log.dropped")
+            .description("User events lost because the queue was full or the write failed")
+            .register(Metrics.globalRegistry);
+    private final Timer commitTimer = Timer.builder("tourguide.event-log.commit")
+            .description("Time spent writing and forcing a batch of user events")
+            .register(Metrics.globalRegistry);
+    private volatile boolean closed;
+    private volatile long nextSequence = -1; // -1 until the existing segments have been read
+    // Only used by the writer thread
+    private FileChannel segment;
+    private long segmentSize;
+
+    public FileUserEventLog(Path directory) {
+        this(directory, DEFAULT_SEGMENT_BYTES, DEFAULT_QUEUE_CAPACITY);
+    }
+
+    /**
+     * @param segmentBytes  size from which a new segment is started
+     * @param queueCapacity number of events waiting to be written from which new events are dropped
+     */
+    public FileUserEventLog(Path directory, long segmentBytes, int queueCapacity) {
+        if (segmentBytes < 1 || queueCapacity < 1) {
+            throw new IllegalArgumentException("Segment size and queue capacity must be positive");
+        }
+        this.directory = directory;
+        this.segmentBytes = segmentBytes;
+        queue = new ArrayBlockingQueue<>(queueCapacity);
+        Gauge.builder("tourguide.event-log.queued", queue, BlockingQueue::size)
+                .description("User events waiting to be written")
+                .register(Metrics.globalRegistry);
+        writer = new Thread(this::writeEvents, "user-event-log");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    @Override
+    public synchronized long replay(Consumer<UserEvent> consumer) throws IOException {
+        Files.createDirectories(directory);
+        long lastSequence = 0;
+        long count = 0;
+        for (Segment file : listSegments()) {
+            lastSequence = Math.max(lastSequence, file.firstSequence());
+            try (FileChannel channel = FileChannel.open(file.path(), StandardOpenOption.READ)) {
+                ByteBuffer bytes = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+                while (bytes.remaining() >= RECORD_HEADER_BYTES) {
+                    int length = bytes.getInt();
+                    int checksum = bytes.getInt();
+                    if (length < 0 || length > bytes.remaining() || checksum(bytes.slice(bytes.position(), length)) != checksum) {
+                        logger.warn("Skipping the end of " + file.path().getFileName() + " from a torn or corrupted record");
+                        break;
+                    }
+                    ByteBuffer body = bytes.slice(bytes.position(), length);
+                    bytes.position(bytes.position() + length);
+                    lastSequence = Math.max(lastSequence, body.getLong());
+                    consumer.accept(readEvent(body));
+                    count++;
+                }
+            }
+        }
+        nextSequence = lastSequence + 1;
+        return count;
+    }
+
+    @Override
+    public void append(UserEvent event) {
+        if (closed || !queue.offer(event)) {
+            dropped.increment();
+        }
+    }
+
+    @Override
+    public long position() {
+        return Math.max(0, nextSequence);
+    }
+
+    /**
+     * Deletes the segments followed by a segment starting at or before the position, the current segment is kept
+     */
+    @Override
+    public synchronized void truncate(long position) throws IOException {
+        List<Segment> segments = listSegments();
+        for (int i = 0; i + 1 < segments.size() && segments.get(i + 1).firstSequence() <= position; i++) {
+            Files.delete(segments.get(i).path());
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while writing the last user events", e);
+        }
+    }
+
+    private void writeEvents() {
+        List<UserEvent> batch = new ArrayList<>(MAX_BATCH_SIZE);
+        UserSnapshotCodec.Output out = new UserSnapshotCodec.Output(64 * 1024);
+        try {
+            while (!closed || !queue.isEmpty()) {
+                UserEvent first = queue.poll(100, TimeUnit.MILLISECONDS); //Wakes up regularly to notice the close
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                queue.drainTo(batch, MAX_BATCH_SIZE - 1);
+                try {
+                    commit(batch, out);
+                    written.increment(batch.size());
+                } catch (IOException | UncheckedIOException e) {
+                    logger.error("Failed to write " + batch.size() + " user events: " + e.getMessage());
+                    dropped.increment(batch.size());
+                    closeSegment(); //The next batch starts a new segment after the failed write
+                }
+                batch.clear();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            closeSegment();
+        }
+    }
+
+    /**
+     * Writes the events and forces them to disk, the position only moves once they are durable.
+     * A batch that fails is removed from the segment, so that its sequence numbers can be given to the next events
+     * without two records sharing a number.
+     */
+    private void commit(List<UserEvent> batch, UserSnapshotCodec.Output out) throws IOException {
+        if (nextSequence < 0) {
+            replay(event -> {
+            }); //Events appended without replaying first, only the next sequence number is needed
+        }
+        if (segment == null || segmentSize >= segmentBytes) {
+            startSegment();
+        }
+        long sequence = nextSequence;
+        out.clear();
+        for (UserEvent event : batch) {
+            int start = out.size();
+            out.putInt(0); // length
+            out.putInt(0); // checksum
+            out.putLong(sequence++);
+            writeEvent(out, event);
+            out.putInt(start, out.size() - start - RECORD_HEADER_BYTES);
+            out.putInt(start + Integer.BYTES, checksum(out.slice(start + RECORD_HEADER_BYTES, out.size())));
+        }
+
+        long begin = System.nanoTime();
+        ByteBuffer bytes = out.toByteBuffer();
+        try {
+            while (bytes.hasRemaining()) {
+                segment.write(bytes);
+            }
+            segment.force(false);
+        } catch (IOException | UncheckedIOException e) {
+            discardBatch(batch.size());
+            throw e;
+        }
+        commitTimer.record(System.nanoTime() - begin, TimeUnit.NANOSECONDS);
+        segmentSize += out.size();
+        nextSequence = sequence;
+    }
+
+    /**
+     * Truncates the current segment back to its size before the failed batch, whose records may be complete. If that
+     * fails too, the sequence numbers of the batch are skipped rather than reused.
+     */
+    private void discardBatch(int eventCount) {
+        try {
+            segment.truncate(segmentSize);
+            segment.force(false);
+        } catch (IOException | RuntimeException e) {
+            logger.error("Failed to remove a failed batch from the event log, skipping its sequence numbers: "
+                    + e.getMessage());
+            nextSequence += eventCount;
+        }
+    }
+
+    /**
+     * Opens a new segment file for writing, overridden by tests to simulate disk failures
+     */
+    protected FileChannel openSegment(Path path) throws IOException {
+        return FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.WRITE);
+    }
+
+    private void startSegment() throws IOException {
+        closeSegment();
+        Files.createDirectories(directory);
+        Path path = directory.resolve(String.format("events-%019d.log", nextSequence));
+        segment = openSegment(path);
+        segmentSize = 0;
+        try (FileChannel directoryChannel = FileChannel.open(directory, StandardOpenOption.READ)) {
+            directoryChannel.force(true); //Makes the new file itself durable
+        } catch (IOException e) {
+            //Not supported by every platform, the segment content is still forced
+        }
+    }
+
+    private void closeSegment() {
+        if (segment != null) {
+            try {
+                segment.close();
+            } catch (IOException e) {
+                logger.error("Failed to close event log segment: " + e.getMessage());
+            }
+            segment = null;
+        }
+    }
+
+    private static void writeEvent(UserSnapshotCodec.Output out, UserEvent event) {
+        if (event instanceof UserEvent.LocationAdded location) {
+            out.putByte(LOCATION_ADDED);
+            writeLocation(out, location);
+        } else if (event instanceof UserEvent.RewardAdded reward) {
+            out.putByte(REWARD_ADDED);
+            writeUserId(out, reward.userId());
+            out.putInt(reward.attractionOrdinal());
+            writeAttraction(out, reward.attraction());
+            writeLocation(out, reward.location());
+            out.putInt(reward.rewardPoints());
+        } else if (event instanceof UserEvent.RewardPointsSet points) {
+            out.putByte(REWARD_POINTS_SET);
+            writeUserId(out, points.userId());
+            out.putInt(points.attractionOrdinal());
+            writeAttraction(out, points.attraction());
+            out.putInt(points.rewardPoints());
+        }
+    }
+
+    private static UserEvent readEvent(ByteBuffer in) {
+        byte type = in.get();
+        return switch (type) {
+            case LOCATION_ADDED -> readLocation(in);
+            case REWARD_ADDED -> {
+                UUID userId = new UUID(in.getLong(), in.getLong());
+                int ordinal = in.getInt();
+                yield new UserEvent.RewardAdded(userId, ordinal, readAttraction(in), readLocation(in), in.getInt());
+            }
+            case REWARD_POINTS_SET -> new UserEvent.RewardPointsSet(new UUID(in.getLong(), in.getLong()), in.getInt(),
+                    readAttraction(in), in.getInt());
+            default -> throw new IllegalStateException("Unknown user event type " + type);
+        };
+    }
+
+    private static void writeLocation(UserSnapshotCodec.Output out, UserEvent.LocationAdded location) {
+        writeUserId(out, location.userId());
+        out.putDouble(location.latitude());
+        out.putDouble(location.longitude());
+        out.putLong(location.time());
+    }
+
+    private static UserEvent.LocationAdded readLocation(ByteBuffer in) {
+        return new UserEvent.LocationAdded(new UUID(in.getLong(), in.getLong()), in.getDouble(), in.getDouble(),
+                in.getLong());
+    }
+
+    private static void writeAttraction(UserSnapshotCodec.Output out, Attraction attraction) {
+        out.putString(attraction.attractionName);
+        out.putString(attraction.city);
+        out.putString(attraction.state);
+        out.putDouble(attraction.latitude);
+        out.putDouble(attraction.longitude);
+    }
+
+    private static Attraction readAttraction(ByteBuffer in) {
+        return new Attraction(UserSnapshotCodec.getString(in), UserSnapshotCodec.getString(in),
+                UserSnapshotCodec.getString(in), in.getDouble(), in.getDouble());
+    }
+
+    private static void writeUserId(UserSnapshotCodec.Output out, UUID userId) {
+        out.putLong(userId.getMostSignificantBits());
+        out.putLong(userId.getLeastSignificantBits());
+    }
+
+    private static int checksum(ByteBuffer bytes) {
+        CRC32 crc = new CRC32();
+        crc.update(bytes);
+        return (int) crc.getValue();
+    }
+
+    /**
+     * @return the segments of the directory sorted by first sequence number
+     */
+    private List<Segment> listSegments() throws IOException {
+        if (!Files.isDirectory(directory)) {
+            return List.of();
+        }
+        List<Segment> segments = new ArrayList<>();
+        try (Stream<Path> paths = Files.list(directory)) {
+            for (Path path : (Iterable<Path>) paths::iterator) {
+                Matcher matcher = FILE_NAME.matcher(path.getFileName().toString());
+                if (matcher.matches()) {
+                    segments.add(new Segment(path, Long.parseLong(matcher.group(1))));
+                }
+            }
+        }
+        segments.sort((segment1, segment2) -> Long.compare(segment1.firstSequence(), segment2.firstSequence()));
+        return segments;
+    }
+
+    private record Segment(Path path, long firstSequence) {
+    }
+}
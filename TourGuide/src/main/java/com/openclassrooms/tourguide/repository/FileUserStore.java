@@ -0,0 +1,328 @@
+package com.openclassrooms.tourguide.repository;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.ToIntFunction;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.openclassrooms.tourguide.model.User;
+
+import gpsUtil.location.Attraction;
+
+/**
+ * User store writing binary checkpoint files in a directory.
+ * <p>
+ * A checkpoint is either a full snapshot of all users or a delta holding the users changed since the previous
+ * checkpoint. Once the number of deltas reaches its maximum, the next checkpoint is a full snapshot and the older files
+ * are deleted. Loading reads the latest full snapshot, then its deltas in order, the latest copy of a user winning.
+ * <p>
+ * The users of a file are split into shards of a fixed number of users. Shards are encoded in parallel and written
+ * with a single gathering write through a FileChannel, to a temporary file moved into place once forced to disk, so a
+ * crash never leaves a partial checkpoint. On load, each shard is memory mapped, checked against its CRC-32 and decoded
+ * in parallel. The header of a file holds the table of the attractions of its rewards and the offset, length, number of
+ * users and checksum of each shard. The ordinals of the table are those of the run that wrote the file, the rewards
+ * are loaded with the ordinals the current run gives to the same attractions.
+ */
+public class FileUserStore implements UserStore {
+
+    public static final int DEFAULT_SHARD_SIZE = 16384;
+    public static final int DEFAULT_MAX_DELTAS = 8;
+    private static final int MAGIC = 0x54475553; // "TGUS"
+    private static final int FORMAT_VERSION = 1;
+    private static final int PREFIX_BYTES = 3 * Integer.BYTES; // magic, version and header length
+    private static final int SHARD_ENTRY_BYTES = Long.BYTES + 3 * Integer.BYTES;
+    private static final byte FULL = 0;
+    private static final byte DELTA = 1;
+    private static final Pattern FILE_NAME = Pattern.compile("users-(\\d+)\\.(snapshot|delta)");
+
+    private final Logger logger = LoggerFactory.getLogger(FileUserStore.class);
+    private final Path directory;
+    private final int shardSize;
+    private final int maxDeltas;
+    private boolean loaded;
+    private long sequence; // of the latest file
+    private boolean hasSnapshot;
+    private int deltaCount; // since the latest full snapshot
+
+    public FileUserStore(Path directory) {
+        this(directory, DEFAULT_SHARD_SIZE, DEFAULT_MAX_DELTAS);
+    }
+
+    /**
+     * @param shardSize number of users per shard
+     * @param maxDeltas number of deltas written between two full snapshots
+     */
+    public FileUserStore(Path directory, int shardSize, int maxDeltas) {
+        if (shardSize < 1 || maxDeltas < 0) {
+            throw new IllegalArgumentException("Shard size must be positive and the number of deltas not negative");
+        }
+        this.directory = directory;
+        this.shardSize = shardSize;
+        this.maxDeltas = maxDeltas;
+    }
+
+    @Override
+    public synchronized List<User> load(ToIntFunction<Attraction> attractionOrdinals) throws IOException {
+        Files.createDirectories(directory);
+        List<CheckpointFile> files = listFiles();
+        int snapshotIndex = -1;
+        for (int i = 0; i < files.size(); i++) {
+            if (files.get(i).full()) {
+                snapshotIndex = i;
+            }
+        }
+        loaded = true;
+        sequence = files.isEmpty() ? 0 : files.get(files.size() - 1).sequence();
+        if (snapshotIndex < 0) {
+            return List.of();
+        }
+
+        Map<UUID, User> users = new LinkedHashMap<>();
+        for (CheckpointFile file : files.subList(snapshotIndex, files.size())) {
+            for (User user : read(file.path(), attractionOrdinals)) {
+                users.put(user.getUserId(), user);
+            }
+        }
+        hasSnapshot = true;
+        deltaCount = files.size() - snapshotIndex - 1;
+        users.values().forEach(user -> user.setCheckpointedRevision(user.getRevision()));
+        logger.info("Loaded " + users.size() + " users from " + (deltaCount + 1) + " checkpoint files");
+        return new ArrayList<>(users.values());
+    }
+
+    /**
+     * Writes a delta of the changed users, or a full snapshot of all users every {@code maxDeltas + 1} checkpoints
+     *
+     * @throws IllegalStateException if the store has not been loaded, as the first full snapshot would replace it
+     */
+    @Override
+    public synchronized int checkpoint(Collection<User> users) throws IOException {
+        if (!loaded) {
+            throw new IllegalStateException("Users must be loaded before the first checkpoint");
+        }
+        boolean full = !hasSnapshot || deltaCount >= maxDeltas;
+        List<User> written = full ? List.copyOf(users)
+                : users.stream().filter(user -> user.getRevision() != user.getCheckpointedRevision()).toList();
+        if (!full && written.isEmpty()) {
+            return 0;
+        }
+        //Revisions read before encoding, a user changed meanwhile is written again by the next checkpoint
+        long[] revisions = written.stream().mapToLong(User::getRevision).toArray();
+
+        long next = sequence + 1;
+        Path path = directory.resolve(fileName(next, full));
+        write(path, written, full);
+        for (int i = 0; i < revisions.length; i++) {
+            written.get(i).setCheckpointedRevision(revisions[i]);
+        }
+        sequence = next;
+        if (full) {
+            hasSnapshot = true;
+            deltaCount = 0;
+            deleteFilesBefore(next);
+        } else {
+            deltaCount++;
+        }
+        logger.debug("Checkpoint " + path.getFileName() + ": " + written.size() + " users");
+        return written.size();
+    }
+
+    private void write(Path path, List<User> users, boolean full) throws IOException {
+        int shardCount = (users.size() + shardSize - 1) / shardSize;
+        Map<Integer, Attraction> attractions = new ConcurrentHashMap<>();
+        Shard[] shards = IntStream.range(0, shardCount).parallel()
+                .mapToObj(shard -> encodeShard(
+                        users.subList(shard * shardSize, Math.min(users.size(), (shard + 1) * shardSize)), attractions))
+                .toArray(Shard[]::new);
+
+        UserSnapshotCodec.Output attractionTable = new UserSnapshotCodec.Output(1024);
+        attractionTable.putInt(attractions.isEmpty() ? 0 : attractions.keySet().stream().max(Integer::compare).get() + 1);
+        attractionTable.putInt(attractions.size());
+        attractions.forEach((ordinal, attraction) -> UserSnapshotCodec.writeAttraction(attractionTable, ordinal, attraction));
+
+        int headerLength = PREFIX_BYTES + 1 + Integer.BYTES + attractionTable.size()
+                + Integer.BYTES + shardCount * SHARD_ENTRY_BYTES;
+        ByteBuffer header = ByteBuffer.allocate(headerLength);
+        header.putInt(MAGIC).putInt(FORMAT_VERSION).putInt(headerLength);
+        header.put(full ? FULL : DELTA);
+        header.putInt(users.size());
+        header.put(attractionTable.toByteBuffer());
+        header.putInt(shardCount);
+        long offset = headerLength;
+        for (Shard shard : shards) {
+            header.putLong(offset).putInt(shard.bytes().remaining()).putInt(shard.userCount()).putInt(shard.crc());
+            offset += shard.bytes().remaining();
+        }
+        header.flip();
+
+        ByteBuffer[] buffers = new ByteBuffer[shardCount + 1];
+        buffers[0] = header;
+        for (int i = 0; i < shardCount; i++) {
+            buffers[i + 1] = shards[i].bytes();
+        }
+        Path temporary = path.resolveSibling(path.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            while (buffers[shardCount].hasRemaining() || header.hasRemaining()) {
+                channel.write(buffers);
+            }
+            channel.force(true);
+        }
+        Files.move(temporary, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    private Shard encodeShard(List<User> users, Map<Integer, Attraction> attractions) {
+        UserSnapshotCodec.Output out = new UserSnapshotCodec.Output(users.size() * 256);
+        for (User user : users) {
+            UserSnapshotCodec.writeUser(out, user, attractions);
+        }
+        ByteBuffer bytes = out.toByteBuffer();
+        CRC32 crc = new CRC32();
+        crc.update(bytes.duplicate());
+        return new Shard(bytes, users.size(), (int) crc.getValue());
+    }
+
+    private List<User> read(Path path, ToIntFunction<Attraction> attractionOrdinals) throws IOException {
+        try {
+            return readFile(path, attractionOrdinals);
+        } catch (RuntimeException e) {
+            throw new IOException("Invalid checkpoint file " + path, e);
+        }
+    }
+
+    private List<User> readFile(Path path, ToIntFunction<Attraction> attractionOrdinals) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            ByteBuffer prefix = ByteBuffer.allocate(PREFIX_BYTES);
+            while (prefix.hasRemaining()) {
+                if (channel.read(prefix, prefix.position()) < 0) {
+                    throw new IOException("Truncated checkpoint file " + path);
+                }
+            }
+            prefix.flip();
+            if (prefix.getInt() != MAGIC) {
+                throw new IOException("Not a checkpoint file " + path);
+            }
+            int version = prefix.getInt();
+            if (version != FORMAT_VERSION) {
+                throw new IOException("Unsupported checkpoint format " + version + " in " + path);
+            }
+            int headerLength = prefix.getInt();
+            if (headerLength < PREFIX_BYTES || headerLength > channel.size()) {
+                throw new IOException("Truncated checkpoint file " + path);
+            }
+
+            ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, headerLength).position(PREFIX_BYTES);
+            header.get(); // kind, a delta is read like a snapshot
+            int userCount = header.getInt();
+            Attraction[] attractions = new Attraction[header.getInt()];
+            int attractionCount = header.getInt();
+            for (int i = 0; i < attractionCount; i++) {
+                UserSnapshotCodec.readAttraction(header, attractions);
+            }
+            int[] ordinals = new int[attractions.length]; //From the ordinals of the file to the current ones
+            for (int i = 0; i < attractions.length; i++) {
+                ordinals[i] = attractions[i] == null ? -1 : attractionOrdinals.applyAsInt(attractions[i]);
+            }
+            ShardEntry[] entries = new ShardEntry[header.getInt()];
+            for (int i = 0; i < entries.length; i++) {
+                entries[i] = new ShardEntry(header.getLong(), header.getInt(), header.getInt(), header.getInt());
+                if (entries[i].offset() + entries[i].length() > channel.size()) {
+                    throw new IOException("Truncated checkpoint file " + path);
+                }
+            }
+
+            List<User> users = new ArrayList<>(userCount);
+            try {
+                Arrays.stream(entries).parallel()
+                        .map(entry -> readShard(channel, entry, attractions, ordinals, path))
+                        .forEachOrdered(users::addAll);
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+            return users;
+        }
+    }
+
+    private List<User> readShard(FileChannel channel, ShardEntry entry, Attraction[] attractions, int[] ordinals,
+                                 Path path) {
+        try {
+            ByteBuffer bytes = channel.map(FileChannel.MapMode.READ_ONLY, entry.offset(), entry.length());
+            CRC32 crc = new CRC32();
+            crc.update(bytes.duplicate());
+            if ((int) crc.getValue() != entry.crc()) {
+                throw new IOException("Corrupted shard at offset " + entry.offset() + " in " + path);
+            }
+            List<User> users = new ArrayList<>(entry.userCount());
+            for (int i = 0; i < entry.userCount(); i++) {
+                users.add(UserSnapshotCodec.readUser(bytes, attractions, ordinals));
+            }
+            return users;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } catch (RuntimeException e) {
+            throw new UncheckedIOException(new IOException("Invalid shard at offset " + entry.offset() + " in " + path, e));
+        }
+    }
+
+    /**
+     * @return the checkpoint files of the directory sorted by sequence, after deleting temporary files left by a crash
+     */
+    private List<CheckpointFile> listFiles() throws IOException {
+        List<CheckpointFile> files = new ArrayList<>();
+        try (Stream<Path> paths = Files.list(directory)) {
+            for (Path path : (Iterable<Path>) paths::iterator) {
+                String name = path.getFileName().toString();
+                Matcher matcher = FILE_NAME.matcher(name);
+                if (matcher.matches()) {
+                    files.add(new CheckpointFile(path, Long.parseLong(matcher.group(1)), matcher.group(2).equals("snapshot")));
+                } else if (name.startsWith("users-") && name.endsWith(".tmp")) {
+                    Files.delete(path);
+                }
+            }
+        }
+        files.sort((file1, file2) -> Long.compare(file1.sequence(), file2.sequence()));
+        return files;
+    }
+
+    private void deleteFilesBefore(long sequence) throws IOException {
+        for (CheckpointFile file : listFiles()) {
+            if (file.sequence() < sequence) {
+                Files.delete(file.path());
+            }
+        }
+    }
+
+    private static String fileName(long sequence, boolean full) {
+        return String.format("users-%019d.%s", sequence, full ? "snapshot" : "delta");
+    }
+
+    private record Shard(ByteBuffer bytes, int userCount, int crc) {
+    }
+
+    private record ShardEntry(long offset, int length, int userCount, int crc) {
+    }
+
+    private record CheckpointFile(Path path, long sequence, boolean full) {
+    }
+}
@@ -0,0 +1,71 @@
+package com.openclassrooms.tourguide.repository;
+
+import java.io.IOException;
+import java.util.function.Consumer;
+
+import com.openclassrooms.tourguide.model.UserEvent;
+
+/**
+ * Durable log of the changes of the users made since the latest checkpoint of the {@link UserStore}.
+ * <p>
+ * Appending an event never waits for the disk. Each event gets a sequence number once written, and a checkpoint
+ * started after an event is written holds the change, so the events before the position read at the start of a
+ * checkpoint can be dropped once it is done.
+ */
+public interface UserEventLog {
+
+    /**
+     * Log that keeps nothing, used when persistence is disabled
+     */
+    UserEventLog NONE = new UserEventLog() {
+
+        @Override
+        public long replay(Consumer<UserEvent> consumer) {
+            return 0;
+        }
+
+        @Override
+        public void append(UserEvent event) {
+        }
+
+        @Override
+        public long position() {
+            return 0;
+        }
+
+        @Override
+        public void truncate(long position) {
+        }
+
+        @Override
+        public void close() {
+        }
+    };
+
+    /**
+     * Reads all the events of the log in order, before any event is appended
+     *
+     * @return the number of events read
+     */
+    long replay(Consumer<UserEvent> consumer) throws IOException;
+
+    /**
+     * Queues the event to be written by the next group commit, without waiting
+     */
+    void append(UserEvent event);
+
+    /**
+     * @return the sequence number of the next event to be written, all events before it are on disk
+     */
+    long position();
+
+    /**
+     * Drops the events before the position, once a checkpoint holds them
+     */
+    void truncate(long position) throws IOException;
+
+    /**
+     * Writes the queued events and stops the log
+     */
+    void close() throws IOException;
+}
@@ -0,0 +1,55 @@
+package com.openclassrooms.tourguide.repository;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.openclassrooms.tourguide.model.User;
+
+/**
+ * In memory store of the users, indexed by user name and by id.
+ * <p>
+ * Both indexes are concurrent hash maps, which only lock the bin being written, so users can be added while others
+ * are read or traversed. Traversals are weakly consistent: they never fail and never copy the users, and they may or
+ * may not see users added after they started.
+ */
+public class UserRepository {
+
+    private final Map<String, User> usersByName = new ConcurrentHashMap<>();
+    private final Map<UUID, User> usersById = new ConcurrentHashMap<>();
+    private final Collection<User> users = Collections.unmodifiableCollection(usersByName.values());
+
+    public User getByUserName(String userName) {
+        return usersByName.get(userName);
+    }
+
+    public User getById(UUID userId) {
+        return usersById.get(userId);
+    }
+
+    /**
+     * Adds the user unless a user with the same name already exists
+     *
+     * @return true if the user was added
+     */
+    public boolean add(User user) {
+        if (usersByName.putIfAbsent(user.getUserName(), user) != null) {
+            return false;
+        }
+        usersById.put(user.getUserId(), user);
+        return true;
+    }
+
+    /**
+     * @return a read only, weakly consistent view of all users
+     */
+    public Collection<User> getAll() {
+        return users;
+    }
+
+    public int size() {
+        return usersByName.size();
+    }
+}
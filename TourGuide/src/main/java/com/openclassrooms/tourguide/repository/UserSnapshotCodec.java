@@ -0,0 +1,223 @@
+package com.openclassrooms.tourguide.repository;
+
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import com.openclassrooms.tourguide.model.User;
+import com.openclassrooms.tourguide.model.UserPreferences;
+import com.openclassrooms.tourguide.model.UserReward;
+
+import gpsUtil.location.Attraction;
+import gpsUtil.location.Location;
+import gpsUtil.location.VisitedLocation;
+
+/**
+ * Binary encoding of the users in the files of the {@link FileUserStore}.
+ * <p>
+ * A user is written as its id, strings as a length and UTF-8 bytes, its preferences, its visited locations as
+ * latitude, longitude and time, and its rewards as attraction ordinal, visited location and points. Attractions are
+ * written once per file, in a table referenced by ordinal.
+ */
+final class UserSnapshotCodec {
+
+    private static final long NO_TIMESTAMP = Long.MIN_VALUE;
+
+    private UserSnapshotCodec() {
+    }
+
+    /**
+     * Writes the user, and adds the attractions of its rewards to the attractions table
+     */
+    static void writeUser(Output out, User user, Map<Integer, Attraction> attractions) {
+        out.putLong(user.getUserId().getMostSignificantBits());
+        out.putLong(user.getUserId().getLeastSignificantBits());
+        out.putString(user.getUserName());
+        out.putString(user.getPhoneNumber());
+        out.putString(user.getEmailAddress());
+        Date latestLocationTimestamp = user.getLatestLocationTimestamp();
+        out.putLong(latestLocationTimestamp == null ? NO_TIMESTAMP : latestLocationTimestamp.getTime());
+
+        UserPreferences preferences = user.getUserPreferences();
+        out.putInt(preferences.getAttractionProximity());
+        out.putInt(preferences.getTripDuration());
+        out.putInt(preferences.getTicketQuantity());
+        out.putInt(preferences.getNumberOfAdults());
+        out.putInt(preferences.getNumberOfChildren());
+
+        User.LocationsSnapshot locations = user.snapshotVisitedLocations();
+        List<VisitedLocation> visitedLocations = locations.visitedLocations();
+        out.putLong(locations.unprocessedLocationCount());
+        out.putInt(visitedLocations.size());
+        for (VisitedLocation visitedLocation : visitedLocations) {
+            putVisitedLocation(out, visitedLocation);
+        }
+
+        List<UserReward> userRewards = user.getUserRewards();
+        out.putInt(userRewards.size());
+        for (UserReward userReward : userRewards) {
+            out.putInt(userReward.getAttractionOrdinal());
+            putVisitedLocation(out, userReward.visitedLocation);
+            out.putInt(userReward.getRewardPoints());
+            attractions.putIfAbsent(userReward.getAttractionOrdinal(), userReward.attraction);
+        }
+    }
+
+    /**
+     * @param attractions attractions of the file by ordinal
+     * @param ordinals    current ordinals of the attractions of the file, by ordinal of the file
+     */
+    static User readUser(ByteBuffer in, Attraction[] attractions, int[] ordinals) {
+        UUID userId = new UUID(in.getLong(), in.getLong());
+        User user = new User(userId, getString(in), getString(in), getString(in));
+        long latestLocationTimestamp = in.getLong();
+        if (latestLocationTimestamp != NO_TIMESTAMP) {
+            user.setLatestLocationTimestamp(new Date(latestLocationTimestamp));
+        }
+
+        UserPreferences preferences = new UserPreferences();
+        preferences.setAttractionProximity(in.getInt());
+        preferences.setTripDuration(in.getInt());
+        preferences.setTicketQuantity(in.getInt());
+        preferences.setNumberOfAdults(in.getInt());
+        preferences.setNumberOfChildren(in.getInt());
+        user.setUserPreferences(preferences);
+
+        long unprocessedLocationCount = in.getLong();
+        int visitedLocationCount = in.getInt();
+        for (int i = 0; i < visitedLocationCount; i++) {
+            user.addToVisitedLocations(getVisitedLocation(in, userId));
+        }
+        user.setUnprocessedLocationCount(unprocessedLocationCount);
+
+        int userRewardCount = in.getInt();
+        for (int i = 0; i < userRewardCount; i++) {
+            int ordinal = in.getInt();
+            VisitedLocation visitedLocation = getVisitedLocation(in, userId);
+            if (ordinal < 0 || ordinal >= attractions.length || attractions[ordinal] == null) {
+                throw new IllegalStateException("Unknown attraction ordinal " + ordinal);
+            }
+            user.addUserReward(new UserReward(ordinals[ordinal], visitedLocation, attractions[ordinal], in.getInt()));
+        }
+        return user;
+    }
+
+    static void writeAttraction(Output out, int ordinal, Attraction attraction) {
+        out.putInt(ordinal);
+        out.putString(attraction.attractionName);
+        out.putString(attraction.city);
+        out.putString(attraction.state);
+        out.putDouble(attraction.latitude);
+        out.putDouble(attraction.longitude);
+    }
+
+    /**
+     * Reads an attraction into the table, with a new attraction id as gpsUtil gives new ids on every call anyway
+     */
+    static void readAttraction(ByteBuffer in, Attraction[] attractions) {
+        int ordinal = in.getInt();
+        attractions[ordinal] = new Attraction(getString(in), getString(in), getString(in), in.getDouble(), in.getDouble());
+    }
+
+    private static void putVisitedLocation(Output out, VisitedLocation visitedLocation) {
+        out.putDouble(visitedLocation.location.latitude);
+        out.putDouble(visitedLocation.location.longitude);
+        out.putLong(visitedLocation.timeVisited.getTime());
+    }
+
+    private static VisitedLocation getVisitedLocation(ByteBuffer in, UUID userId) {
+        return new VisitedLocation(userId, new Location(in.getDouble(), in.getDouble()), new Date(in.getLong()));
+    }
+
+    static String getString(ByteBuffer in) {
+        int length = in.getInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Heap buffer growing as values are written
+     */
+    static final class Output {
+
+        private ByteBuffer buffer;
+
+        Output(int initialCapacity) {
+            buffer = ByteBuffer.allocate(initialCapacity);
+        }
+
+        void putByte(byte value) {
+            ensureRemaining(Byte.BYTES).put(value);
+        }
+
+        void putInt(int value) {
+            ensureRemaining(Integer.BYTES).putInt(value);
+        }
+
+        void putLong(long value) {
+            ensureRemaining(Long.BYTES).putLong(value);
+        }
+
+        void putDouble(double value) {
+            ensureRemaining(Double.BYTES).putDouble(value);
+        }
+
+        void putString(String value) {
+            if (value == null) {
+                putInt(-1);
+                return;
+            }
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            putInt(bytes.length);
+            ensureRemaining(bytes.length).put(bytes);
+        }
+
+        /**
+         * Overwrites an int already written, such as a length only known once the bytes following it are written
+         */
+        void putInt(int index, int value) {
+            buffer.putInt(index, value);
+        }
+
+        int size() {
+            return buffer.position();
+        }
+
+        /**
+         * @return the bytes written between the two positions, sharing the content of this output
+         */
+        ByteBuffer slice(int from, int to) {
+            return buffer.slice(from, to - from);
+        }
+
+        void clear() {
+            buffer.clear();
+        }
+
+        /**
+         * @return the bytes written, ready to be read
+         */
+        ByteBuffer toByteBuffer() {
+            return buffer.duplicate().flip();
+        }
+
+        private ByteBuffer ensureRemaining(int bytes) {
+            if (buffer.remaining() < bytes) {
+                long capacity = Math.max((long) buffer.capacity() * 2, (long) buffer.position() + bytes);
+                if (capacity > Integer.MAX_VALUE - 8) {
+                    throw new BufferOverflowException();
+                }
+                buffer = ByteBuffer.allocate((int) capacity).put(buffer.flip());
+            }
+            return buffer;
+        }
+    }
+}
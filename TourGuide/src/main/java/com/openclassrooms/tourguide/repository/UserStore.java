@@ -0,0 +1,52 @@
+package com.openclassrooms.tourguide.repository;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.List;
+import java.util.function.ToIntFunction;
+
+import com.openclassrooms.tourguide.model.User;
+
+import gpsUtil.location.Attraction;
+
+/**
+ * Durable copy of the users kept in memory by the {@link UserRepository}, so that their locations and rewards
+ * survive a restart.
+ * <p>
+ * The users are saved by checkpoints: each checkpoint saves the users changed since the previous one, which is known
+ * from the revision of each user.
+ */
+public interface UserStore {
+
+    /**
+     * Store that keeps nothing, used when persistence is disabled
+     */
+    UserStore NONE = new UserStore() {
+
+        @Override
+        public List<User> load(ToIntFunction<Attraction> attractionOrdinals) {
+            return List.of();
+        }
+
+        @Override
+        public int checkpoint(Collection<User> users) {
+            return 0;
+        }
+    };
+
+    /**
+     * @param attractionOrdinals gives the ordinal of the current attraction registry to an attraction of the stored
+     *                           user rewards, as the registry of the run that saved them may have ordered the
+     *                           attractions differently
+     * @return the users of the latest checkpoint, marked as checkpointed, or an empty list if nothing was saved yet
+     */
+    List<User> load(ToIntFunction<Attraction> attractionOrdinals) throws IOException;
+
+    /**
+     * Saves the users changed since their last checkpoint and marks them as checkpointed
+     *
+     * @param users all users, the store decides which ones to write
+     * @return the number of users written
+     */
+    int checkpoint(Collection<User> users) throws IOException;
+}
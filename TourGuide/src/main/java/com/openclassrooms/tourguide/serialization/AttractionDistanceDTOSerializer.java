@@ -0,0 +1,51 @@
+package com.openclassrooms.tourguide.serialization;
+
+import java.io.IOException;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.io.SerializedString;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.ser.std.StdSerializer;
+import com.openclassrooms.tourguide.model.AttractionDistanceDTO;
+
+/**
+ * Writes a nearby attraction field by field, with the same fields as the default serialization but without looking
+ * up the properties of the classes through reflection
+ */
+public class AttractionDistanceDTOSerializer extends StdSerializer<AttractionDistanceDTO> {
+
+    private static final SerializedString ATTRACTION_NAME = new SerializedString("attractionName");
+    private static final SerializedString ATTRACTION_LOCATION = new SerializedString("attractionLocation");
+    private static final SerializedString USER_LOCATION = new SerializedString("userLocation");
+    private static final SerializedString DISTANCE = new SerializedString("distance");
+    private static final SerializedString REWARD_POINTS = new SerializedString("rewardPoints");
+
+    public AttractionDistanceDTOSerializer() {
+        super(AttractionDistanceDTO.class);
+    }
+
+    @Override
+    public void serialize(AttractionDistanceDTO attraction, JsonGenerator generator, SerializerProvider provider)
+            throws IOException {
+        generator.writeStartObject(attraction);
+        generator.writeFieldName(ATTRACTION_NAME);
+        generator.writeString(attraction.getAttractionName());
+        generator.writeFieldName(ATTRACTION_LOCATION);
+        LocationFields.writeLocation(attraction.getAttractionLocation(), generator);
+        generator.writeFieldName(USER_LOCATION);
+        LocationFields.writeLocation(attraction.getUserLocation(), generator);
+        generator.writeFieldName(DISTANCE);
+        if (attraction.getDistance() == null) {
+            generator.writeNull();
+        } else {
+            generator.writeNumber(attraction.getDistance());
+        }
+        generator.writeFieldName(REWARD_POINTS);
+        if (attraction.getRewardPoints() == null) {
+            generator.writeNull(); //Points not fetched in time
+        } else {
+            generator.writeNumber(attraction.getRewardPoints());
+        }
+        generator.writeEndObject();
+    }
+}
@@ -0,0 +1,98 @@
+package com.openclassrooms.tourguide.serialization;
+
+import java.io.IOException;
+import java.util.UUID;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.io.SerializedString;
+import com.fasterxml.jackson.databind.SerializerProvider;
+
+import gpsUtil.location.Attraction;
+import gpsUtil.location.Location;
+import gpsUtil.location.VisitedLocation;
+
+/**
+ * Writes the gpsUtil locations nested in the responses, with the same fields as the default serialization
+ */
+final class LocationFields {
+
+    static final SerializedString LONGITUDE = new SerializedString("longitude");
+    static final SerializedString LATITUDE = new SerializedString("latitude");
+    static final SerializedString USER_ID = new SerializedString("userId");
+    static final SerializedString LOCATION = new SerializedString("location");
+    static final SerializedString TIME_VISITED = new SerializedString("timeVisited");
+    static final SerializedString ATTRACTION_NAME = new SerializedString("attractionName");
+    static final SerializedString CITY = new SerializedString("city");
+    static final SerializedString STATE = new SerializedString("state");
+    static final SerializedString ATTRACTION_ID = new SerializedString("attractionId");
+
+    private LocationFields() {
+    }
+
+    static void writeLocation(Location location, JsonGenerator generator) throws IOException {
+        if (location == null) {
+            generator.writeNull();
+            return;
+        }
+        generator.writeStartObject(location);
+        writeCoordinates(location, generator);
+        generator.writeEndObject();
+    }
+
+    static void writeVisitedLocation(VisitedLocation visitedLocation, JsonGenerator generator,
+                                     SerializerProvider provider) throws IOException {
+        if (visitedLocation == null) {
+            generator.writeNull();
+            return;
+        }
+        generator.writeStartObject(visitedLocation);
+        generator.writeFieldName(USER_ID);
+        writeUuid(visitedLocation.userId, generator, provider);
+        generator.writeFieldName(LOCATION);
+        writeLocation(visitedLocation.location, generator);
+        generator.writeFieldName(TIME_VISITED);
+        if (visitedLocation.timeVisited == null) {
+            generator.writeNull();
+        } else {
+            provider.defaultSerializeDateValue(visitedLocation.timeVisited, generator); //Follows the date settings
+        }
+        generator.writeEndObject();
+    }
+
+    static void writeAttraction(Attraction attraction, JsonGenerator generator, SerializerProvider provider)
+            throws IOException {
+        if (attraction == null) {
+            generator.writeNull();
+            return;
+        }
+        generator.writeStartObject(attraction);
+        writeCoordinates(attraction, generator);
+        generator.writeFieldName(ATTRACTION_NAME);
+        generator.writeString(attraction.attractionName);
+        generator.writeFieldName(CITY);
+        generator.writeString(attraction.city);
+        generator.writeFieldName(STATE);
+        generator.writeString(attraction.state);
+        generator.writeFieldName(ATTRACTION_ID);
+        writeUuid(attraction.attractionId, generator, provider);
+        generator.writeEndObject();
+    }
+
+    private static void writeCoordinates(Location location, JsonGenerator generator) throws IOException {
+        generator.writeFieldName(LONGITUDE);
+        generator.writeNumber(location.longitude);
+        generator.writeFieldName(LATITUDE);
+        generator.writeNumber(location.latitude);
+    }
+
+    /**
+     * Ids go through the serializer of the mapper, which writes them as 16 bytes in binary formats
+     */
+    private static void writeUuid(UUID uuid, JsonGenerator generator, SerializerProvider provider) throws IOException {
+        if (uuid == null) {
+            generator.writeNull();
+        } else {
+            provider.findValueSerializer(UUID.class).serialize(uuid, generator, provider);
+        }
+    }
+}
@@ -0,0 +1,18 @@
+package com.openclassrooms.tourguide.serialization;
+
+import com.fasterxml.jackson.databind.module.SimpleModule;
+import com.openclassrooms.tourguide.model.AttractionDistanceDTO;
+import com.openclassrooms.tourguide.model.UserReward;
+
+/**
+ * Serializers of the responses sent the most, registered with every object mapper of the application whatever the
+ * format, JSON or Smile
+ */
+public class TourGuideJacksonModule extends SimpleModule {
+
+    public TourGuideJacksonModule() {
+        super("TourGuideJacksonModule");
+        addSerializer(UserReward.class, new UserRewardSerializer());
+        addSerializer(AttractionDistanceDTO.class, new AttractionDistanceDTOSerializer());
+    }
+}
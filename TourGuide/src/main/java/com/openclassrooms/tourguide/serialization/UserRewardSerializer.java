@@ -0,0 +1,37 @@
+package com.openclassrooms.tourguide.serialization;
+
+import java.io.IOException;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.io.SerializedString;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.ser.std.StdSerializer;
+import com.openclassrooms.tourguide.model.UserReward;
+
+/**
+ * Writes a user reward field by field, with the same fields as the default serialization but without looking up the
+ * properties of the classes through reflection
+ */
+public class UserRewardSerializer extends StdSerializer<UserReward> {
+
+    private static final SerializedString VISITED_LOCATION = new SerializedString("visitedLocation");
+    private static final SerializedString ATTRACTION = new SerializedString("attraction");
+    private static final SerializedString REWARD_POINTS = new SerializedString("rewardPoints");
+
+    public UserRewardSerializer() {
+        super(UserReward.class);
+    }
+
+    @Override
+    public void serialize(UserReward userReward, JsonGenerator generator, SerializerProvider provider)
+            throws IOException {
+        generator.writeStartObject(userReward);
+        generator.writeFieldName(VISITED_LOCATION);
+        LocationFields.writeVisitedLocation(userReward.visitedLocation, generator, provider);
+        generator.writeFieldName(ATTRACTION);
+        LocationFields.writeAttraction(userReward.attraction, generator, provider);
+        generator.writeFieldName(REWARD_POINTS);
+        generator.writeNumber(userReward.getRewardPoints());
+        generator.writeEndObject();
+    }
+}
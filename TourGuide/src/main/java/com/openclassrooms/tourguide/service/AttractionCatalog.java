@@ -0,0 +1,146 @@
+package com.openclassrooms.tourguide.service;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.openclassrooms.tourguide.repository.AttractionRegistry;
+import com.openclassrooms.tourguide.spatial.AttractionIndex;
+
+import gpsUtil.location.Attraction;
+
+/**
+ * Attractions shared by the services, loaded from gpsUtil in the background.
+ * <p>
+ * Readers get an immutable snapshot holding the attraction registry and the spatial index of the active attractions.
+ * A refresh fetches the attractions again, builds the next snapshot on the gpsUtil thread and swaps it in atomically,
+ * so readers never wait for a refresh and never see a half built snapshot. Ordinals are kept across refreshes.
+ * Only the first read waits, if the initial load is not done yet.
+ * <p>
+ * The attractions are refreshed every hour by default, which can be overridden with the system property
+ * tourguide.attractions.refresh-minutes (0 disables the scheduled refresh).
+ */
+public class AttractionCatalog {
+
+    private static final long REFRESH_MINUTES = Long.getLong("tourguide.attractions.refresh-minutes", 60);
+    private final Logger logger = LoggerFactory.getLogger(AttractionCatalog.class);
+    private final GpsUtilService gpsUtilService;
+    private final AtomicReference<Snapshot> snapshot = new AtomicReference<>();
+    private final CompletableFuture<Snapshot> initialLoad;
+    private final ScheduledExecutorService scheduler;
+
+    public AttractionCatalog(GpsUtilService gpsUtilService) {
+        this(gpsUtilService, REFRESH_MINUTES);
+    }
+
+    /**
+     * @param refreshMinutes time between two scheduled refreshes, 0 to only refresh on demand
+     */
+    public AttractionCatalog(GpsUtilService gpsUtilService, long refreshMinutes) {
+        this(gpsUtilService, Duration.ofMinutes(refreshMinutes));
+    }
+
+    /**
+     * @param refreshInterval time between two scheduled refreshes, zero to only refresh on demand
+     */
+    public AttractionCatalog(GpsUtilService gpsUtilService, Duration refreshInterval) {
+        this.gpsUtilService = gpsUtilService;
+        initialLoad = refresh();
+        if (!refreshInterval.isZero() && !refreshInterval.isNegative()) {
+            scheduler = Executors.newSingleThreadScheduledExecutor(
+                    ExecutionMode.PLATFORM.threadFactory("attraction-catalog-"));
+            //A failed refresh is logged and must not throw, which would cancel the next scheduled refreshes
+            scheduler.scheduleWithFixedDelay(() -> refresh().exceptionally(exception -> null).join(),
+                    refreshInterval.toNanos(), refreshInterval.toNanos(), TimeUnit.NANOSECONDS);
+        } else {
+            scheduler = null;
+        }
+    }
+
+    /**
+     * @return the latest snapshot, waiting for the initial load if needed
+     * @throws java.util.concurrent.CompletionException if the attractions have never been loaded successfully
+     */
+    public Snapshot getSnapshot() {
+        Snapshot current = snapshot.get();
+        return current != null ? current : initialLoad.join();
+    }
+
+    /**
+     * Fetches the attractions and swaps in a new snapshot built from them
+     *
+     * @return a completable future of the new snapshot
+     */
+    public CompletableFuture<Snapshot> refresh() {
+        return gpsUtilService.getAttractions()
+                .thenApply(this::swap)
+                .whenComplete((result, exception) -> {
+                    if (exception != null) {
+                        logger.error("Failed to refresh attractions, keeping the previous ones: " + exception.getMessage());
+                    } else {
+                        logger.debug("Attractions refreshed, version " + result.version() + ", "
+                                + result.index().size() + " active attractions");
+                    }
+                });
+    }
+
+    /**
+     * Gives the ordinal of the current registry to an attraction read from elsewhere, such as the user store, whose
+     * ordinals may come from an earlier registry
+     *
+     * @return the ordinal of the attraction with the same name, the attraction being registered as no longer active
+     * if gpsUtil does not list it
+     */
+    public int ordinalOf(Attraction attraction) {
+        getSnapshot(); //Waits for the initial load outside of the lock, which the load needs to swap its snapshot in
+        synchronized (this) {
+            Snapshot current = snapshot.get();
+            int ordinal = current.registry().ordinalOf(attraction.attractionName);
+            if (ordinal < 0) {
+                AttractionRegistry registry = current.registry().registerInactive(attraction);
+                ordinal = registry.size() - 1;
+                snapshot.set(new Snapshot(registry, current.index(), current.version() + 1));
+            }
+            return ordinal;
+        }
+    }
+
+    /**
+     * Stops the scheduled refresh
+     */
+    public void shutdown() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+    }
+
+    /**
+     * Builds the next snapshot from the current one, refreshes are serialized so that none of them is lost
+     */
+    private synchronized Snapshot swap(List<Attraction> attractions) {
+        Snapshot previous = snapshot.get();
+        AttractionRegistry registry = previous == null ? new AttractionRegistry(attractions)
+                : previous.registry().update(attractions);
+        int[] activeOrdinals = registry.getActiveOrdinals();
+        AttractionIndex index = new AttractionIndex(
+                Arrays.stream(activeOrdinals).mapToObj(registry::get).toList(), activeOrdinals);
+        Snapshot next = new Snapshot(registry, index, previous == null ? 1 : previous.version() + 1);
+        snapshot.set(next);
+        return next;
+    }
+
+    /**
+     * Attractions at one point in time: the registry of all attractions ever loaded, and the spatial index of the
+     * active ones, which reports attraction ordinals as positions
+     */
+    public record Snapshot(AttractionRegistry registry, AttractionIndex index, long version) {
+    }
+}
@@ -0,0 +1,116 @@
+package com.openclassrooms.tourguide.service;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Kind of threads running the calls to the external libraries.
+ * <p>
+ * The mode is read from the system property {@value #PROPERTY} ("platform" or "virtual"). Without it, virtual threads
+ * are used whenever the runtime supports them (Java 21 and later, see the java21 Maven profile).
+ * The virtual thread API is looked up at runtime so the project still builds and runs on Java 17.
+ */
+public enum ExecutionMode {
+
+    /**
+     * A cached pool of platform threads, calls are only submitted once they hold a permit so the number of threads
+     * stays within the concurrency limit
+     */
+    PLATFORM,
+
+    /**
+     * A new virtual thread per call holding a permit
+     */
+    VIRTUAL;
+
+    public static final String PROPERTY = "tourguide.execution-mode";
+
+    private static final MethodHandle NEW_VIRTUAL_EXECUTOR;
+    private static final MethodHandle VIRTUAL_THREAD_FACTORY;
+
+    static {
+        MethodHandle newVirtualExecutor = null;
+        MethodHandle virtualThreadFactory = null;
+        try {
+            MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+            Class<?> ofVirtual = Class.forName("java.lang.Thread$Builder$OfVirtual");
+            newVirtualExecutor = lookup.findStatic(Executors.class, "newVirtualThreadPerTaskExecutor",
+                    MethodType.methodType(ExecutorService.class));
+            //Thread.ofVirtual().name(prefix, 0).factory()
+            virtualThreadFactory = MethodHandles.filterReturnValue(
+                    MethodHandles.collectArguments(
+                            lookup.findVirtual(ofVirtual, "name", MethodType.methodType(ofVirtual, String.class, long.class)),
+                            0, lookup.findStatic(Thread.class, "ofVirtual", MethodType.methodType(ofVirtual))),
+                    lookup.findVirtual(ofVirtual, "factory", MethodType.methodType(ThreadFactory.class)));
+        } catch (ReflectiveOperationException e) {
+            //Runtime older than Java 21, only platform threads are available
+        }
+        NEW_VIRTUAL_EXECUTOR = newVirtualExecutor;
+        VIRTUAL_THREAD_FACTORY = virtualThreadFactory;
+    }
+
+    /**
+     * @return the mode set by the system property, or the default one for the current runtime
+     */
+    public static ExecutionMode current() {
+        String mode = System.getProperty(PROPERTY);
+        if (mode != null && !mode.isBlank()) {
+            return valueOf(mode.trim().toUpperCase(Locale.ROOT));
+        }
+        return isVirtualSupported() ? VIRTUAL : PLATFORM;
+    }
+
+    public static boolean isVirtualSupported() {
+        return NEW_VIRTUAL_EXECUTOR != null;
+    }
+
+    /**
+     * @return an executor running each task on a new thread of this mode
+     */
+    public ExecutorService newExecutor() {
+        if (this == PLATFORM) {
+            return Executors.newCachedThreadPool();
+        }
+        MethodHandle newVirtualExecutor = requireVirtual(NEW_VIRTUAL_EXECUTOR);
+        try {
+            return (ExecutorService) newVirtualExecutor.invokeExact();
+        } catch (Throwable e) {
+            throw new IllegalStateException("Failed to create virtual thread executor", e);
+        }
+    }
+
+    /**
+     * @param prefix of the thread names, followed by a counter
+     * @return a factory of daemon threads of this mode
+     */
+    public ThreadFactory threadFactory(String prefix) {
+        if (this == PLATFORM) {
+            AtomicInteger count = new AtomicInteger();
+            return task -> {
+                Thread thread = new Thread(task, prefix + count.getAndIncrement());
+                thread.setDaemon(true);
+                return thread;
+            };
+        }
+        MethodHandle virtualThreadFactory = requireVirtual(VIRTUAL_THREAD_FACTORY);
+        try {
+            return (ThreadFactory) virtualThreadFactory.invoke(prefix, 0L);
+        } catch (Throwable e) {
+            throw new IllegalStateException("Failed to create virtual thread factory", e);
+        }
+    }
+
+    private static MethodHandle requireVirtual(MethodHandle handle) {
+        if (handle == null) {
+            throw new IllegalStateException("Virtual threads require Java 21 or later, running on "
+                    + Runtime.version());
+        }
+        return handle;
+    }
+}
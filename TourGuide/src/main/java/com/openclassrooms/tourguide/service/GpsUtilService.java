@@ -14,15 +14,16 @@ import java.util.concurrent.CompletableFuture;
 /**
  * Handles all operations involving the external library GpsUtil. Calls to the library are done asynchronously with
  * threads from executor service handled by the thread service.
- * The number of threads can be modified in the thread service.
+ * The number of concurrent calls to GpsUtil is limited by the thread service.
  */
 
 @Service
 public class GpsUtilService {
 
+    private static final int CONCURRENCY_LIMIT = 100; //GpsUtil is rate limited, more concurrent calls would only wait
     private final Logger logger = LoggerFactory.getLogger(GpsUtilService.class);
     private final GpsUtil gpsUtil;
-    private final ThreadService threadService = new ThreadService();
+    private final ThreadService threadService = new ThreadService("gpsUtil", CONCURRENCY_LIMIT);
 
     public GpsUtilService(GpsUtil gpsUtil) {
         this.gpsUtil = gpsUtil;
@@ -36,26 +37,39 @@ public class GpsUtilService {
      */
 
     public CompletableFuture<VisitedLocation> getUserLocation(UUID userId) {
-        return CompletableFuture.supplyAsync(() -> gpsUtil.getUserLocation(userId), threadService.getThread())
+        return threadService.supplyAsync("getUserLocation", () -> gpsUtil.getUserLocation(userId))
                 .whenComplete((result, exception) -> {
                     if (exception != null) {
                         logger.error("Failed to fetch user location: " + exception.getMessage());
                     }
-                    threadService.releaseThread();
                 });
     }
 
+    /**
+     * Fetches the users current location on the calling thread, within the same concurrency limit as the async calls
+     *
+     * @param userId of the user
+     * @return the visited location
+     */
+    public VisitedLocation fetchUserLocation(UUID userId) {
+        try {
+            return threadService.call("getUserLocation", () -> gpsUtil.getUserLocation(userId));
+        } catch (RuntimeException e) {
+            logger.error("Failed to fetch user location: " + e.getMessage());
+            throw e;
+        }
+    }
+
     /**
      * Fetches all attractions
      * @return a completable future of list of attractions for further operations if needed
      */
     public CompletableFuture<List<Attraction>> getAttractions() {
-        return CompletableFuture.supplyAsync(gpsUtil::getAttractions, threadService.getThread())
+        return threadService.supplyAsync("getAttractions", gpsUtil::getAttractions)
                 .whenComplete((result, exception) -> {
                             if (exception != null) {
                                 logger.error("Failed to fetch list of attractions: " + exception.getMessage());
                             }
-                            threadService.releaseThread();
                         }
                 );
     }
@@ -1,45 +1,95 @@
 package com.openclassrooms.tourguide.service;
 
+import com.openclassrooms.tourguide.cache.CoalescingCache;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.Metrics;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Service;
 import rewardCentral.RewardCentral;
 
+import java.time.Duration;
 import java.util.UUID;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
 /**
  * Handles all operations involving the external library RewardCentral.
  * Calls to the library are done asynchronously with threads from executor service handled by the thread service.
- * The number of threads can be modified in the thread service.
+ * The number of concurrent calls to RewardCentral is limited by the thread service.
+ * Points are cached per attraction and user, the size and lifetime of the cache can be overridden with the system
+ * properties tourguide.reward-cache.max-size and tourguide.reward-cache.ttl-minutes.
+ * The cache statistics are published as the tourguide.reward-cache.* metrics
  */
 @Service
 public class RewardCentralService {
 
+    private static final int CONCURRENCY_LIMIT = 500;
+    private static final String OPERATION = "getAttractionRewardPoints";
+    private static final int CACHE_MAX_SIZE = Integer.getInteger("tourguide.reward-cache.max-size", 100000);
+    private static final int CACHE_TTL_MINUTES = Integer.getInteger("tourguide.reward-cache.ttl-minutes", 30);
     private final Logger logger = LoggerFactory.getLogger(RewardCentralService.class);
     private final RewardCentral rewardCentral;
-    private final ThreadService threadService = new ThreadService();
+    private final ThreadService threadService = new ThreadService("rewardCentral", CONCURRENCY_LIMIT);
+    private final CoalescingCache<RewardKey, Integer> cache =
+            new CoalescingCache<>(CACHE_MAX_SIZE, Duration.ofMinutes(CACHE_TTL_MINUTES));
 
     public RewardCentralService(RewardCentral rewardCentral) {
         this.rewardCentral = rewardCentral;
-    }
 
+        FunctionCounter.builder("tourguide.reward-cache.hits", cache, c -> c.getStats().hits())
+                .register(Metrics.globalRegistry);
+        FunctionCounter.builder("tourguide.reward-cache.misses", cache, c -> c.getStats().misses())
+                .register(Metrics.globalRegistry);
+        FunctionCounter.builder("tourguide.reward-cache.evictions", cache, c -> c.getStats().evictions())
+                .register(Metrics.globalRegistry);
+        Gauge.builder("tourguide.reward-cache.size", cache, CoalescingCache::size)
+                .register(Metrics.globalRegistry);
+    }
 
     /**
-     * Fetches reward points for an attraction
+     * Fetches reward points for an attraction, from the cache when they were fetched recently
      *
      * @param attractionId of the attraction
      * @param userId       id of the user
      * @return a completable future of the number of points for further operations
      */
     public CompletableFuture<Integer> getAttractionRewardPoints(UUID attractionId, UUID userId) {
-        return CompletableFuture.supplyAsync(() ->
-                        rewardCentral.getAttractionRewardPoints(attractionId, userId), threadService.getThread())
-                .whenComplete((result, exception) -> {
-                    if (exception != null) {
-                        logger.error("Failed to fetch reward points : " + exception.getMessage());
-                    }
-                    threadService.releaseThread();
-                });
+        return cache.get(new RewardKey(attractionId, userId), key ->
+                threadService.supplyAsync(OPERATION, () -> rewardCentral.getAttractionRewardPoints(attractionId, userId))
+                        .whenComplete((result, exception) -> {
+                            if (exception != null) {
+                                logger.error("Failed to fetch reward points : " + exception.getMessage());
+                            }
+                        }));
+    }
+
+    /**
+     * Fetches reward points for an attraction on the calling thread, within the same concurrency limit as the async calls.
+     * Shares the cache of the async calls.
+     *
+     * @param attractionId of the attraction
+     * @param userId       id of the user
+     * @return the number of points
+     */
+    public int fetchAttractionRewardPoints(UUID attractionId, UUID userId) {
+        try {
+            return cache.get(new RewardKey(attractionId, userId), key -> CompletableFuture.completedFuture(
+                    threadService.call(OPERATION, () -> rewardCentral.getAttractionRewardPoints(attractionId, userId)))).join();
+        } catch (CompletionException e) {
+            logger.error("Failed to fetch reward points : " + e.getCause().getMessage());
+            throw e.getCause() instanceof RuntimeException cause ? cause : e;
+        }
+    }
+
+    /**
+     * @return hits, misses and evictions of the reward points cache
+     */
+    public CoalescingCache.CacheStats getCacheStats() {
+        return cache.getStats();
+    }
+
+    private record RewardKey(UUID attractionId, UUID userId) {
     }
 }
@@ -0,0 +1,151 @@
+package com.openclassrooms.tourguide.service;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.openclassrooms.tourguide.model.User;
+import com.openclassrooms.tourguide.model.UserReward;
+
+/**
+ * Reward aggregates over all users, updated as rewards are granted so that they are read without going through the
+ * users.
+ * <p>
+ * Users are ranked by their total of reward points in a sorted set, so the top users are its first entries. Each
+ * attraction counts the users it rewarded, and a histogram counts the users by total of points, in buckets doubling
+ * in width. Only users with at least one reward are counted.
+ * <p>
+ * The ranking of a user is changed under the lock of its entry in a concurrent map, the new ranking being added to
+ * the sorted set before the previous one is removed, so that a reader may see a user twice but never miss it.
+ */
+public class RewardStatistics {
+
+    private static final Comparator<UserRanking> BY_POINTS = Comparator.comparingInt(UserRanking::rewardPoints)
+            .reversed()
+            .thenComparing(UserRanking::userId);
+
+    private final Map<UUID, UserRanking> rankings = new ConcurrentHashMap<>();
+    private final ConcurrentSkipListSet<UserRanking> ranking = new ConcurrentSkipListSet<>(BY_POINTS);
+    private final Map<String, LongAdder> attractionRewards = new ConcurrentHashMap<>();
+    // Bucket 0 counts the users without points, bucket i the users with 2^(i-1) to 2^i - 1 points
+    private final LongAdder[] histogram = new LongAdder[Integer.SIZE];
+
+    public RewardStatistics() {
+        for (int i = 0; i < histogram.length; i++) {
+            histogram[i] = new LongAdder();
+        }
+    }
+
+    /**
+     * Counts all the rewards of users whose rewards were not granted through this instance, such as restored users
+     */
+    public void addUsers(Iterable<User> users) {
+        for (User user : users) {
+            List<UserReward> userRewards = user.getUserRewards();
+            if (!userRewards.isEmpty()) {
+                userRewards.forEach(reward -> countReward(reward.attraction.attractionName));
+                updateUser(user);
+            }
+        }
+    }
+
+    /**
+     * Counts a reward just granted to the user
+     */
+    public void rewardAdded(User user, UserReward reward) {
+        countReward(reward.attraction.attractionName);
+        updateUser(user);
+    }
+
+    /**
+     * Moves the user to its current total of reward points in the ranking and the histogram
+     */
+    public void updateUser(User user) {
+        rankings.compute(user.getUserId(), (userId, previous) -> {
+            int rewardPoints = user.getRewardPointsTotal();
+            if (previous != null && previous.rewardPoints() == rewardPoints) {
+                return previous;
+            }
+            UserRanking current = new UserRanking(userId, user.getUserName(), rewardPoints);
+            ranking.add(current);
+            histogram[bucket(rewardPoints)].increment();
+            if (previous != null) {
+                ranking.remove(previous);
+                histogram[bucket(previous.rewardPoints())].decrement();
+            }
+            return current;
+        });
+    }
+
+    /**
+     * @return the users with the most reward points, the most first
+     */
+    public List<UserRanking> getTopUsers(int limit) {
+        List<UserRanking> topUsers = new ArrayList<>(Math.max(0, Math.min(limit, rankings.size())));
+        Set<UUID> seen = new HashSet<>();
+        for (UserRanking userRanking : ranking) {
+            if (topUsers.size() >= limit) {
+                break;
+            }
+            if (seen.add(userRanking.userId())) { //Skips the previous ranking of a user being moved
+                topUsers.add(userRanking);
+            }
+        }
+        return topUsers;
+    }
+
+    /**
+     * @return the attractions that rewarded the most users, the most first
+     */
+    public List<AttractionRewards> getTopAttractions(int limit) {
+        return attractionRewards.entrySet().stream()
+                .map(entry -> new AttractionRewards(entry.getKey(), entry.getValue().sum()))
+                .sorted(Comparator.comparingLong(AttractionRewards::rewardedUsers).reversed()
+                        .thenComparing(AttractionRewards::attractionName))
+                .limit(Math.max(0, limit))
+                .toList();
+    }
+
+    /**
+     * @return the number of users by range of total reward points, from the lowest range, without the empty ranges
+     */
+    public List<PointsBucket> getRewardPointsDistribution() {
+        List<PointsBucket> buckets = new ArrayList<>();
+        for (int i = 0; i < histogram.length; i++) {
+            long users = histogram[i].sum();
+            if (users > 0) {
+                int minPoints = i == 0 ? 0 : 1 << (i - 1);
+                int maxPoints = i == 0 ? 0 : i == histogram.length - 1 ? Integer.MAX_VALUE : (1 << i) - 1;
+                buckets.add(new PointsBucket(minPoints, maxPoints, users));
+            }
+        }
+        return buckets;
+    }
+
+    private void countReward(String attractionName) {
+        attractionRewards.computeIfAbsent(attractionName, name -> new LongAdder()).increment();
+    }
+
+    private static int bucket(int rewardPoints) {
+        return rewardPoints <= 0 ? 0 : Integer.SIZE - Integer.numberOfLeadingZeros(rewardPoints);
+    }
+
+    public record UserRanking(UUID userId, String userName, int rewardPoints) {
+    }
+
+    public record AttractionRewards(String attractionName, long rewardedUsers) {
+    }
+
+    /**
+     * Number of users whose total of reward points is between the min and max points, both included
+     */
+    public record PointsBucket(int minPoints, int maxPoints, long users) {
+    }
+}
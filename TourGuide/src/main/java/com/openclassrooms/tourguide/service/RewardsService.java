@@ -1,26 +1,25 @@
 package com.openclassrooms.tourguide.service;
 
-import java.util.HashSet;
+import java.util.ArrayList;
 import java.util.List;
-import java.util.Set;
-import java.util.concurrent.*;
+import java.util.concurrent.CompletableFuture;
 
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Timer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.springframework.stereotype.Service;
 
 import gpsUtil.location.Attraction;
 import gpsUtil.location.Location;
 import gpsUtil.location.VisitedLocation;
 import com.openclassrooms.tourguide.model.User;
 import com.openclassrooms.tourguide.model.UserReward;
+import com.openclassrooms.tourguide.spatial.DistanceCalculator;
 
 /**
- * Calculates and adds user rewards to a user
+ * Calculates and adds user rewards to a user, created by {@link com.openclassrooms.tourguide.config.TourGuideModule}
  */
-@Service
 public class RewardsService {
-    private static final double STATUTE_MILES_PER_NAUTICAL_MILE = 1.15077945;
     private final Logger logger = LoggerFactory.getLogger(RewardsService.class);
 
     // proximity in miles
@@ -29,63 +28,115 @@ public class RewardsService {
     private int attractionProximityRange = 200;
     private final RewardCentralService rewardCentralService;
     private final GpsUtilService gpsUtilService;
-    private final List<Attraction> attractions;
+    private final AttractionCatalog attractionCatalog;
+    private final RewardStatistics rewardStatistics = new RewardStatistics();
+    private final Timer newRewardsTimer = Timer.builder("tourguide.rewards.calculate")
+            .description("Proximity checks of the new visited locations of a user, without fetching the points")
+            .publishPercentileHistogram()
+            .register(Metrics.globalRegistry);
 
+    /**
+     * Creates a rewards service with its own attraction catalog, loaded in the background
+     */
     public RewardsService(GpsUtilService gpsUtilService, RewardCentralService rewardCentralService) {
+        this(gpsUtilService, rewardCentralService, new AttractionCatalog(gpsUtilService));
+    }
+
+    /**
+     * @param attractionCatalog attractions shared with the other services, stopped by its owner
+     */
+    public RewardsService(GpsUtilService gpsUtilService, RewardCentralService rewardCentralService,
+                          AttractionCatalog attractionCatalog) {
         this.gpsUtilService = gpsUtilService;
         this.rewardCentralService = rewardCentralService;
-        attractions = gpsUtilService.getAttractions().join(); //Fetch the list of attractions
+        this.attractionCatalog = attractionCatalog;
     }
 
     /**
-     * Adds user reward points for all new visited locations close to attractions
-     * @CountDownLatch latch is for testing purpose and can be null
+     * Adds user rewards for all new visited locations close to attractions, then fetches their points concurrently
+     *
+     * @param user whose new visited locations are checked
+     * @return a completable future completed once the points of all the new user rewards are set
      */
-    public void calculateRewards(User user, CountDownLatch latch) {
-        List<VisitedLocation> userLocations = user.getVisitedLocations();
-        List<UserReward> rewards = new CopyOnWriteArrayList<>(user.getUserRewards());
-        Set<Attraction> attractionList = new HashSet<>();
-
-        attractions.parallelStream() //Stream all available attractions
-                .filter(attraction -> rewards.parallelStream()
-                        .noneMatch(reward ->
-                                reward.attraction.attractionName.equals(attraction.attractionName)))//Filter out the attractions that are not already registered as user rewards
-                .forEach(attraction ->
-                        userLocations.parallelStream()
-                                .filter(location -> nearAttraction(location, attraction))//Check if location is within proximity buffert
-                                .findFirst()
-                                .ifPresent(location -> {
-                                    user.addUserReward(new UserReward(location, attraction));//Add user reward
-                                    attractionList.add(attraction); //Add to attraction list for async update
-                                })
-                );
-
-        //Update all user rewards with reward points async
-        calculateRewardPoints(attractionList, user, latch);
+    public CompletableFuture<Void> calculateRewards(User user) {
+        return fetchRewardPoints(addNewRewards(user), user);
     }
 
     /**
-     * Takes a list of attractions and updates the reward points on each attraction for the given user
+     * Adds a user reward, without points, for each attraction close to the visited locations added since the previous
+     * call. Older locations have already been checked and are skipped.
+     * Each reward is registered as pending on the user before it is added, so that the total of the user is not read
+     * without its points: the caller must settle every returned reward once its points are set or given up.
+     * The time spent is recorded by the tourguide.rewards.calculate timer.
      *
-     * @param getPointsList is the list of attractions for which to calculate reward points
-     * @param user          whose user rewards will be updated
-     * @CountDownLatch latch is optional for testing purpose and can be null
+     * @param user whose new visited locations are checked
+     * @return the user rewards added, whose points still have to be fetched
      */
-    public void calculateRewardPoints(Set<Attraction> getPointsList, User user, CountDownLatch latch) {
-        CompletableFuture.runAsync(() -> {
-                    getPointsList.forEach(attraction ->
-                            user.getUserRewards().stream()
-                                    .filter(reward ->
-                                            reward.attraction.attractionName.equals(attraction.attractionName))//Find the user reward to update by attraction name
-                                    .findFirst()
-                                    .ifPresent(reward ->
-                                            reward.setRewardPoints(getRewardPoints(attraction, user).join()))); //Calculate points for the user reward
+    public List<NewReward> addNewRewards(User user) {
+        return newRewardsTimer.record(() -> findNewRewards(user));
+    }
+
+    private List<NewReward> findNewRewards(User user) {
+        List<VisitedLocation> newLocations = user.claimUnprocessedLocations();
+        if (newLocations.isEmpty()) {
+            return List.of();
+        }
+
+        List<NewReward> newRewards = new ArrayList<>();
+        AttractionCatalog.Snapshot attractions = attractionCatalog.getSnapshot(); //Same attractions for the whole call
+
+        //Only the attractions within the proximity buffer of each new location are looked up in the index
+        for (VisitedLocation location : newLocations) {
+            for (int ordinal : attractions.index().getPositionsWithin(location.location, proximityBuffer)) {
+                if (!user.isRewarded(ordinal)) { //Skip attractions already registered as user rewards
+                    UserReward reward = new UserReward(ordinal, location, attractions.registry().get(ordinal));
+                    CompletableFuture<Void> pointsSettled = new CompletableFuture<>();
+                    user.addPendingRewardPoints(pointsSettled);
+                    if (user.addUserReward(reward)) { //Another thread may have rewarded the attraction meanwhile
+                        newRewards.add(new NewReward(reward, pointsSettled));
+                        rewardStatistics.rewardAdded(user, reward);
+                    } else {
+                        pointsSettled.complete(null);
+                    }
                 }
-        ).whenComplete((result, exception) -> {
-            if (latch != null) {
-                latch.countDown();
             }
-        });
+        }
+        return newRewards;
+    }
+
+    /**
+     * Starts fetching the points of all the given user rewards at once, and sets each result on its user reward as
+     * soon as it arrives. Each user reward is settled once its lookup is done, whether it succeeded or not.
+     *
+     * @param rewards whose points are fetched
+     * @param user    who owns the user rewards
+     * @return a completable future completed once all points are set
+     */
+    public CompletableFuture<Void> fetchRewardPoints(List<NewReward> rewards, User user) {
+        CompletableFuture<?>[] lookups = rewards.stream()
+                .map(newReward -> getRewardPoints(newReward.reward().attraction, user)
+                        .thenAccept(points -> setRewardPoints(user, newReward.reward(), points))
+                        .whenComplete((result, exception) -> newReward.settle()))
+                .toArray(CompletableFuture[]::new);
+        return CompletableFuture.allOf(lookups);
+    }
+
+    /**
+     * Fetches the points of a user reward on the calling thread, sets them on the user and settles the user reward,
+     * even if the points could not be fetched
+     */
+    public void updateRewardPoints(NewReward newReward, User user) {
+        try {
+            setRewardPoints(user, newReward.reward(), rewardCentralService.fetchAttractionRewardPoints(
+                    newReward.reward().attraction.attractionId, user.getUserId()));
+        } finally {
+            newReward.settle();
+        }
+    }
+
+    private void setRewardPoints(User user, UserReward reward, int points) {
+        user.setRewardPoints(reward.getAttractionOrdinal(), points);
+        rewardStatistics.updateUser(user);
     }
 
     /**
@@ -108,22 +159,35 @@ public class RewardsService {
         return getDistance(attraction, location) > attractionProximityRange ? false : true;
     }
 
-    //Remove? The method is doing the same thing as the one above ^
-    private boolean nearAttraction(VisitedLocation visitedLocation, Attraction attraction) {
-        return getDistance(attraction, visitedLocation.location) > proximityBuffer ? false : true;
+    public double getDistance(Location loc1, Location loc2) {
+        return DistanceCalculator.getDistance(loc1, loc2);
     }
 
-    public double getDistance(Location loc1, Location loc2) {
-        double lat1 = Math.toRadians(loc1.latitude);
-        double lon1 = Math.toRadians(loc1.longitude);
-        double lat2 = Math.toRadians(loc2.latitude);
-        double lon2 = Math.toRadians(loc2.longitude);
+    /**
+     * @return the attractions used for rewards, shared with the services built on this one
+     */
+    public AttractionCatalog getAttractionCatalog() {
+        return attractionCatalog;
+    }
 
-        double angle = Math.acos(Math.sin(lat1) * Math.sin(lat2)
-                + Math.cos(lat1) * Math.cos(lat2) * Math.cos(lon1 - lon2));
+    /**
+     * @return the aggregates of the rewards granted by this service
+     */
+    public RewardStatistics getRewardStatistics() {
+        return rewardStatistics;
+    }
 
-        double nauticalMiles = 60 * Math.toDegrees(angle);
-        double statuteMiles = STATUTE_MILES_PER_NAUTICAL_MILE * nauticalMiles;
-        return statuteMiles;
+    /**
+     * A user reward just added without its points, and the completable future registered as pending on the user
+     * before the reward was added
+     */
+    public record NewReward(UserReward reward, CompletableFuture<Void> pointsSettled) {
+
+        /**
+         * Completes the pending points of the user reward, once they are set or will not be
+         */
+        public void settle() {
+            pointsSettled.complete(null);
+        }
     }
 }
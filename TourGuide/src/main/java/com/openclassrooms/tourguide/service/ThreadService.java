@@ -1,49 +1,231 @@
 package com.openclassrooms.tourguide.service;
 
+import com.openclassrooms.tourguide.limit.AdaptiveLimiter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Timer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.springframework.stereotype.Service;
 
+import java.util.Map;
 import java.util.concurrent.*;
+import java.util.function.Supplier;
 
 /**
- * Handles access to thread pool with sempahore as limit
+ * Runs the calls to one external dependency on threads of the configured execution mode, with an adaptive limiter
+ * bounding how many calls to that dependency run at the same time.
+ * <p>
+ * The limit follows the latency of the dependency (see {@link AdaptiveLimiter}): it starts from the given limit, which
+ * can be overridden with the system property tourguide.concurrency.[dependency], and moves between
+ * tourguide.concurrency.[dependency].min (a tenth of it by default) and tourguide.concurrency.[dependency].max (four
+ * times it by default). Setting tourguide.concurrency.adaptive to false keeps the limit fixed.
+ * Asynchronous calls never park the calling thread: a call without a permit is queued and submitted once a permit is
+ * released to it.
+ * <p>
+ * Metrics, tagged with the dependency:
+ * <ul>
+ *     <li>tourguide.dependency.calls: timer of the calls, also tagged with the operation and the outcome</li>
+ *     <li>tourguide.dependency.wait: timer of the time from the request of a call until it starts</li>
+ *     <li>tourguide.dependency.active: gauge of the permits in use</li>
+ *     <li>tourguide.dependency.queued: gauge of the calls waiting for a permit</li>
+ *     <li>tourguide.dependency.limit: gauge of the current concurrency limit</li>
+ * </ul>
  */
-@Service
 public class ThreadService {
 
-    private static final int SEMAPHORE_LIMIT = 100;
-    private final Semaphore semaphore;
+    private static final boolean ADAPTIVE = Boolean.parseBoolean(System.getProperty("tourguide.concurrency.adaptive", "true"));
+
+    private final String dependency;
+    private final ExecutionMode mode;
+    private final AdaptiveLimiter limiter;
     private final ExecutorService executorService;
+    private final MeterRegistry meterRegistry;
+    private final Timer waitTimer;
+    private final Map<String, CallTimers> callTimers = new ConcurrentHashMap<>(); // by operation
     private final Logger logger = LoggerFactory.getLogger(ThreadService.class);
 
-    public ThreadService() {
-        //Initialize limits of threads
-        semaphore = new Semaphore(SEMAPHORE_LIMIT);
-        executorService = Executors.newCachedThreadPool();
+    /**
+     * @param dependency       name of the external dependency called through this service
+     * @param concurrencyLimit initial number of calls running at the same time, unless overridden by system property
+     */
+    public ThreadService(String dependency, int concurrencyLimit) {
+        this(dependency, ExecutionMode.current(), adaptiveLimiter(dependency,
+                Integer.getInteger("tourguide.concurrency." + dependency, concurrencyLimit)), Metrics.globalRegistry);
+    }
+
+    /**
+     * @param concurrencyLimit fixed number of calls running at the same time
+     */
+    public ThreadService(String dependency, ExecutionMode mode, int concurrencyLimit) {
+        this(dependency, mode, concurrencyLimit, Metrics.globalRegistry);
     }
 
     /**
-     * Acquires a semaphore and returns executor service
+     * @param concurrencyLimit fixed number of calls running at the same time
+     * @param meterRegistry    where the metrics of the dependency are registered
+     */
+    public ThreadService(String dependency, ExecutionMode mode, int concurrencyLimit, MeterRegistry meterRegistry) {
+        this(dependency, mode, AdaptiveLimiter.fixed(concurrencyLimit), meterRegistry);
+    }
+
+    /**
+     * @param limiter       bounds the calls running at the same time
+     * @param meterRegistry where the metrics of the dependency are registered
+     */
+    public ThreadService(String dependency, ExecutionMode mode, AdaptiveLimiter limiter, MeterRegistry meterRegistry) {
+        this.dependency = dependency;
+        this.mode = mode;
+        this.limiter = limiter;
+        executorService = mode.newExecutor();
+
+        this.meterRegistry = meterRegistry;
+        waitTimer = Timer.builder("tourguide.dependency.wait")
+                .description("Time from the request of a call to the dependency until it starts")
+                .tag("dependency", dependency)
+                .register(meterRegistry);
+        Gauge.builder("tourguide.dependency.active", limiter, AdaptiveLimiter::getInflight)
+                .description("Calls to the dependency running")
+                .tag("dependency", dependency)
+                .register(meterRegistry);
+        Gauge.builder("tourguide.dependency.queued", limiter, AdaptiveLimiter::getQueued)
+                .description("Calls to the dependency waiting for a permit")
+                .tag("dependency", dependency)
+                .register(meterRegistry);
+        Gauge.builder("tourguide.dependency.limit", limiter, AdaptiveLimiter::getLimit)
+                .description("Maximum number of calls to the dependency running at once")
+                .tag("dependency", dependency)
+                .register(meterRegistry);
+        logger.debug("Calls to " + dependency + " run on " + mode + " threads, at most " + limiter.getLimit()
+                + " at once (between " + limiter.getMinLimit() + " and " + limiter.getMaxLimit() + ")");
+    }
+
+    /**
+     * Runs the task asynchronously once a permit is available, without waiting for the permit on the calling thread
      *
-     * @return the ExecutorService instance if the semaphore is successfully acquired
-     * @throws RuntimeException if acquiring the semaphore is interrupted
+     * @param operation name of the called operation, to tag the metrics
+     * @return a completable future of the result of the task
+     */
+    public <T> CompletableFuture<T> supplyAsync(String operation, Supplier<T> task) {
+        long requested = System.nanoTime();
+        return limiter.acquire().thenApplyAsync(permit -> {
+            waitTimer.record(System.nanoTime() - requested, TimeUnit.NANOSECONDS);
+            return runWithPermit(operation, task);
+        }, this::execute);
+    }
+
+    /**
+     * Runs the task on the calling thread once a permit is available, the calling thread waits for the permit
+     *
+     * @param operation name of the called operation, to tag the metrics
+     * @return the result of the task
+     * @throws RuntimeException if waiting for the permit is interrupted
+     */
+    public <T> T call(String operation, Supplier<T> task) {
+        acquire();
+        return runWithPermit(operation, task);
+    }
+
+    public String getDependency() {
+        return dependency;
+    }
+
+    public ExecutionMode getMode() {
+        return mode;
+    }
+
+    /**
+     * @return the current concurrency limit
      */
-    public ExecutorService getThread() {
+    public int getConcurrencyLimit() {
+        return limiter.getLimit();
+    }
+
+    /**
+     * Runs the task and releases its permit with the latency of the call, a failed call counting as dropped
+     */
+    private <T> T runWithPermit(String operation, Supplier<T> task) {
+        long start = System.nanoTime();
+        boolean dropped = true;
+        try {
+            T result = timed(operation, task);
+            dropped = false;
+            return result;
+        } finally {
+            limiter.release(System.nanoTime() - start, dropped);
+        }
+    }
+
+    /**
+     * Submits a task holding a permit, the permit is released if the executor rejects it
+     */
+    private void execute(Runnable task) {
+        try {
+            executorService.execute(task);
+        } catch (RejectedExecutionException e) {
+            limiter.release();
+            throw e;
+        }
+    }
+
+    private <T> T timed(String operation, Supplier<T> task) {
+        CallTimers timers = callTimers.computeIfAbsent(operation, this::registerCallTimers);
+        long start = System.nanoTime();
+        Timer timer = timers.error();
         try {
-            semaphore.acquire();
-            return executorService;
+            T result = task.get();
+            timer = timers.success();
+            return result;
+        } finally {
+            timer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private CallTimers registerCallTimers(String operation) {
+        return new CallTimers(registerCallTimer(operation, "success"), registerCallTimer(operation, "error"));
+    }
+
+    private Timer registerCallTimer(String operation, String outcome) {
+        return Timer.builder("tourguide.dependency.calls")
+                .description("Calls to the dependency, without the time spent waiting for a permit")
+                .tags("dependency", dependency, "operation", operation, "outcome", outcome)
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+    }
+
+    private void acquire() {
+        long start = System.nanoTime();
+        CompletableFuture<Void> permit = limiter.acquire();
+        try {
+            permit.get();
+            waitTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
         } catch (InterruptedException e) {
-            logger.error("Semaphore acquisition error: " + e);
-            throw new RuntimeException("Failed to acquire semaphore: " + e.getMessage());
+            if (!permit.cancel(false)) {
+                limiter.release(); //Granted meanwhile
+            }
+            Thread.currentThread().interrupt();
+            logger.error("Permit acquisition error: " + e);
+            throw new RuntimeException("Failed to acquire permit: " + e.getMessage());
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Permit future failed", e.getCause());
         }
     }
 
     /**
-     * Releases the semaphore
+     * @return a limiter starting at the limit, adaptive unless disabled by system property
      */
-    public void releaseThread() {
-        semaphore.release();
+    private static AdaptiveLimiter adaptiveLimiter(String dependency, int concurrencyLimit) {
+        if (!ADAPTIVE) {
+            return AdaptiveLimiter.fixed(concurrencyLimit);
+        }
+        int minLimit = Integer.getInteger("tourguide.concurrency." + dependency + ".min", Math.max(1, concurrencyLimit / 10));
+        int maxLimit = Integer.getInteger("tourguide.concurrency." + dependency + ".max", concurrencyLimit * 4);
+        return new AdaptiveLimiter(concurrencyLimit, Math.min(minLimit, concurrencyLimit), Math.max(maxLimit, concurrencyLimit));
     }
-}
 
+    /**
+     * Timers of the calls of one operation, registered once by outcome
+     */
+    private record CallTimers(Timer success, Timer error) {
+    }
+}
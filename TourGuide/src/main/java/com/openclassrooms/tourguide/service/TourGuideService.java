@@ -2,11 +2,15 @@ package com.openclassrooms.tourguide.service;
 
 import com.openclassrooms.tourguide.model.AttractionDistanceDTO;
 import com.openclassrooms.tourguide.tracker.Tracker;
+import com.openclassrooms.tourguide.tracker.TrackingPipeline;
 import com.openclassrooms.tourguide.model.User;
 import com.openclassrooms.tourguide.model.UserReward;
+import com.openclassrooms.tourguide.spatial.AttractionIndex;
 
 import java.util.*;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -24,14 +28,18 @@ import tripPricer.TripPricer;
  */
 @Service
 public class TourGuideService {
+    // Deadline of each reward points lookup of the nearby attractions, can be overridden with a system property
+    private static final long DEFAULT_NEARBY_POINTS_TIMEOUT_MILLIS =
+            Long.getLong("tourguide.nearby-attractions.points-timeout-millis", 2000);
     private final Logger logger = LoggerFactory.getLogger(TourGuideService.class);
-    private final TripPricer tripPricer = new TripPricer();
+    private final TripPricerService tripPricerService = new TripPricerService(new TripPricer());
     public final Tracker tracker;
     private final RewardsService rewardsService;
     private final GpsUtilService gpsUtilService;
     private final RewardCentralService rewardCentralService;
     private final UserService userService;
-    private final List<Attraction> attractions;
+    private final AttractionCatalog attractionCatalog;
+    private long nearbyPointsTimeoutMillis = DEFAULT_NEARBY_POINTS_TIMEOUT_MILLIS;
     boolean testMode = true;
 
     public TourGuideService(GpsUtilService gpsUtilService, RewardsService rewardsService, UserService userService, RewardCentralService rewardCentralService) {
@@ -40,7 +48,7 @@ public class TourGuideService {
         this.userService = userService;
         this.rewardCentralService = rewardCentralService;
 
-        attractions = gpsUtilService.getAttractions().join();
+        attractionCatalog = rewardsService.getAttractionCatalog(); //Same attractions as the rewards
 
         Locale.setDefault(Locale.US);
 
@@ -50,7 +58,10 @@ public class TourGuideService {
             userService.initializeInternalUsers();
             logger.debug("Finished initializing users");
         }
-        tracker = new Tracker(userService, this); //Track users automatically
+        if (userService.isRestored()) {
+            rewardsService.getRewardStatistics().addUsers(userService.getUsers()); //Rewards granted before the restart
+        }
+        tracker = new Tracker(userService, new TrackingPipeline(gpsUtilService, rewardsService)); //Track users automatically
         addShutDownHook();
     }
 
@@ -62,8 +73,26 @@ public class TourGuideService {
      * Returns the last visited location or track current location if there's no last location
      */
     public VisitedLocation getUserLocation(User user) {
-        return (!user.getVisitedLocations().isEmpty()) ? user.getLastVisitedLocation()
-                : trackUserLocation(user).join();
+        return getUserLocationAsync(user).join();
+    }
+
+    /**
+     * Returns the last visited location, or tracks the current location if there's no last location, without
+     * blocking the calling thread
+     */
+    public CompletableFuture<VisitedLocation> getUserLocationAsync(User user) {
+        return (!user.getVisitedLocations().isEmpty()) ? CompletableFuture.completedFuture(user.getLastVisitedLocation())
+                : trackUserLocation(user);
+    }
+
+    /**
+     * Returns the last visited location of every user that has one, read as the stream is consumed without copying
+     * the users, and without tracking the users that have no location yet
+     */
+    public Stream<VisitedLocation> getCurrentLocations() {
+        return userService.getUsers().stream()
+                .filter(user -> !user.getVisitedLocations().isEmpty())
+                .map(User::getLastVisitedLocation);
     }
 
     /**
@@ -73,7 +102,7 @@ public class TourGuideService {
         return gpsUtilService.getUserLocation(user.getUserId())
                 .thenApply(location -> {
                     user.addToVisitedLocations(location);
-                    rewardsService.calculateRewards(user, null);
+                    rewardsService.calculateRewards(user); //Points are set once fetched, without waiting for them
                     return location;
                 });
     }
@@ -82,28 +111,34 @@ public class TourGuideService {
      * Fetch trip deals based on users current reward points and preferences
      */
     public List<Provider> getTripDeals(User user) {
-        //Sum all user reward points
-        int cumulativeRewardPoints = user.getUserRewards().stream()
-                .mapToInt(UserReward::getRewardPoints).sum();
+        return getTripDealsAsync(user).join();
+    }
 
+    /**
+     * Fetch trip deals based on users current reward points and preferences, without blocking the calling thread.
+     * The reward points still being fetched are awaited first, so that the deals are priced with the full total.
+     */
+    public CompletableFuture<List<Provider>> getTripDealsAsync(User user) {
         //Get list of providers(trip deals) based on reward points preferences and user
-        List<Provider> providers = tripPricer.getPrice(
+        return user.getPendingRewardPoints().thenCompose(settled -> tripPricerService.getPrice(
                 userService.getTripPricerApiKey(),
                 user.getUserId(),
                 user.getUserPreferences().getNumberOfAdults(),
                 user.getUserPreferences().getNumberOfChildren(),
                 user.getUserPreferences().getTripDuration(),
-                cumulativeRewardPoints);
+                user.getRewardPointsTotal())).thenApply(providers -> {
+            //Update users trip deals
+            user.setTripDeals(providers);
 
-        //Update users trip deals
-        user.setTripDeals(providers);
-
-        //Return list of providers(trip deals)
-        return providers;
+            //Return list of providers(trip deals)
+            return providers;
+        });
     }
 
     /**
      * Finds the 5 closest attractions to the users current location.
+     * The reward points of the 5 attractions are fetched at the same time. An attraction whose points are not
+     * fetched within the deadline, or whose lookup fails, is returned without points.
      *
      * @param visitedLocation is the users current location
      * @param user
@@ -112,33 +147,43 @@ public class TourGuideService {
     public CompletableFuture<List<AttractionDistanceDTO>> getNearByAttractions(VisitedLocation visitedLocation, User user) {
         Location userLocation = new Location(visitedLocation.location.latitude, visitedLocation.location.longitude);
 
-        //Calculate distance for each attraction and store in map
-        HashMap<Attraction, Double> attractionDistance = new HashMap<>();
-        attractions.forEach(attraction ->
-                attractionDistance.put(attraction, rewardsService.getDistance(userLocation,
-                        new Location(attraction.latitude, attraction.longitude)))
-        );
-
-        return CompletableFuture.supplyAsync(() -> attractionDistance.entrySet().stream()
-                .sorted(Map.Entry.comparingByValue()) //Sort by distance
-                .limit(5) //Limit to the five closest
-                .map(Map.Entry::getKey)
-                .map(attraction -> new AttractionDistanceDTO( //Convert to DTO
-                        attraction.attractionName,
-                        new Location(attraction.latitude, attraction.longitude),
-                        userLocation,
-                        attractionDistance.get(attraction), //Distance stored in map
-                        rewardCentralService.getAttractionRewardPoints(attraction.attractionId, user.getUserId())
-                                .join()
-                ))
-                .toList());
+        //Look up the five closest attractions in the index, sorted by distance
+        List<AttractionIndex.NearbyAttraction> nearest = attractionCatalog.getSnapshot().index()
+                .getNearestAttractions(userLocation, 5);
+
+        //Start all reward points lookups before waiting for any of them
+        List<CompletableFuture<AttractionDistanceDTO>> attractions = nearest.stream()
+                .map(nearby -> rewardCentralService.getAttractionRewardPoints(nearby.attraction().attractionId, user.getUserId())
+                        .thenApply(points -> toAttractionDistanceDTO(nearby, userLocation, points))
+                        .exceptionally(exception -> toAttractionDistanceDTO(nearby, userLocation, null))
+                        //Only the DTO future is completed on timeout, the shared points future keeps loading
+                        .completeOnTimeout(toAttractionDistanceDTO(nearby, userLocation, null),
+                                nearbyPointsTimeoutMillis, TimeUnit.MILLISECONDS))
+                .toList();
+
+        return CompletableFuture.allOf(attractions.toArray(new CompletableFuture[0]))
+                .thenApply(done -> attractions.stream().map(CompletableFuture::join).toList());
+    }
+
+    private AttractionDistanceDTO toAttractionDistanceDTO(AttractionIndex.NearbyAttraction nearby, Location userLocation,
+                                                          Integer rewardPoints) {
+        return new AttractionDistanceDTO(
+                nearby.attraction().attractionName,
+                new Location(nearby.attraction().latitude, nearby.attraction().longitude),
+                userLocation,
+                nearby.distance(),
+                rewardPoints);
     }
 
+    public void setNearbyPointsTimeoutMillis(long nearbyPointsTimeoutMillis) {
+        this.nearbyPointsTimeoutMillis = nearbyPointsTimeoutMillis;
+    }
 
 private void addShutDownHook() {
     Runtime.getRuntime().addShutdownHook(new Thread() {
         public void run() {
             tracker.stopTracking();
+            userService.shutdown();
         }
     });
 }
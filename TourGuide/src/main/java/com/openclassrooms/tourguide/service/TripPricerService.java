@@ -0,0 +1,85 @@
+package com.openclassrooms.tourguide.service;
+
+import com.openclassrooms.tourguide.cache.CoalescingCache;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.Metrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import tripPricer.Provider;
+import tripPricer.TripPricer;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Handles all operations involving the external library TripPricer.
+ * Calls to the library are done asynchronously with threads from executor service handled by the thread service.
+ * The number of concurrent calls to TripPricer is limited by the thread service.
+ * Trip deals are cached per user, trip preferences and bucket of reward points, so that they are priced again once
+ * the preferences change or the points move to another bucket. The size and lifetime of the cache and the width of
+ * the buckets can be overridden with the system properties tourguide.trip-deals-cache.max-size,
+ * tourguide.trip-deals-cache.ttl-minutes and tourguide.trip-deals-cache.points-bucket.
+ * The cache statistics are published as the tourguide.trip-deals-cache.* metrics
+ */
+public class TripPricerService {
+
+    private static final int CONCURRENCY_LIMIT = 50;
+    private static final int CACHE_MAX_SIZE = Integer.getInteger("tourguide.trip-deals-cache.max-size", 10000);
+    private static final int CACHE_TTL_MINUTES = Integer.getInteger("tourguide.trip-deals-cache.ttl-minutes", 10);
+    private static final int POINTS_BUCKET = Integer.getInteger("tourguide.trip-deals-cache.points-bucket", 100);
+    private final Logger logger = LoggerFactory.getLogger(TripPricerService.class);
+    private final TripPricer tripPricer;
+    private final ThreadService threadService = new ThreadService("tripPricer", CONCURRENCY_LIMIT);
+    private final CoalescingCache<TripDealKey, List<Provider>> cache =
+            new CoalescingCache<>(CACHE_MAX_SIZE, Duration.ofMinutes(CACHE_TTL_MINUTES));
+
+    public TripPricerService(TripPricer tripPricer) {
+        this.tripPricer = tripPricer;
+
+        FunctionCounter.builder("tourguide.trip-deals-cache.hits", cache, c -> c.getStats().hits())
+                .register(Metrics.globalRegistry);
+        FunctionCounter.builder("tourguide.trip-deals-cache.misses", cache, c -> c.getStats().misses())
+                .register(Metrics.globalRegistry);
+        FunctionCounter.builder("tourguide.trip-deals-cache.evictions", cache, c -> c.getStats().evictions())
+                .register(Metrics.globalRegistry);
+        Gauge.builder("tourguide.trip-deals-cache.size", cache, CoalescingCache::size)
+                .register(Metrics.globalRegistry);
+    }
+
+    /**
+     * Fetches the trip deals for a user, from the cache when the same trip was priced recently with reward points in
+     * the same bucket. Concurrent requests for the same trip share a single call to TripPricer.
+     *
+     * @param apiKey        of the TripPricer api
+     * @param userId        id of the user
+     * @param adults        number of adults travelling
+     * @param children      number of children travelling
+     * @param nightsStay    duration of the trip
+     * @param rewardsPoints cumulated reward points of the user
+     * @return a completable future of the list of providers for further operations
+     */
+    public CompletableFuture<List<Provider>> getPrice(String apiKey, UUID userId, int adults, int children,
+                                                      int nightsStay, int rewardsPoints) {
+        TripDealKey tripDealKey = new TripDealKey(userId, adults, children, nightsStay, rewardsPoints / POINTS_BUCKET);
+        return cache.get(tripDealKey, key -> threadService.supplyAsync("getPrice", () ->
+                        List.copyOf(tripPricer.getPrice(apiKey, userId, adults, children, nightsStay, rewardsPoints)))
+                .whenComplete((result, exception) -> {
+                    if (exception != null) {
+                        logger.error("Failed to fetch trip deals : " + exception.getMessage());
+                    }
+                }));
+    }
+
+    /**
+     * @return hits, misses and evictions of the trip deals cache
+     */
+    public CoalescingCache.CacheStats getCacheStats() {
+        return cache.getStats();
+    }
+
+    private record TripDealKey(UUID userId, int adults, int children, int nightsStay, int pointsBucket) {
+    }
+}
@@ -2,42 +2,276 @@ package com.openclassrooms.tourguide.service;
 
 import com.openclassrooms.tourguide.helper.InternalTestHelper;
 import com.openclassrooms.tourguide.model.User;
+import com.openclassrooms.tourguide.model.UserEvent;
+import com.openclassrooms.tourguide.repository.FileUserEventLog;
+import com.openclassrooms.tourguide.repository.FileUserStore;
+import com.openclassrooms.tourguide.repository.UserEventLog;
+import com.openclassrooms.tourguide.repository.UserRepository;
+import com.openclassrooms.tourguide.repository.UserStore;
 import gpsUtil.location.Location;
 import gpsUtil.location.VisitedLocation;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
 import java.time.LocalDateTime;
 import java.time.ZoneOffset;
 import java.util.*;
-import java.util.stream.Collectors;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.IntStream;
 
 /**
  * For testing
+ * <p>
+ * Internal users are generated in parallel, each one from its own random generator seeded from its index, so the
+ * same seed always gives the same users. The seed can be set with the system property tourguide.users.seed.
+ * With the system property tourguide.users.lazy set to true, internal users are only generated when first needed:
+ * looking a user up by name generates that user alone, and any other access generates all of them. The tracker only
+ * goes through the users already generated, so it does not generate them either. A checkpoint of the user store
+ * generates them all, since users are no longer generated once loaded from the store.
+ * <p>
+ * Users are kept in a {@link UserStore} when the system property tourguide.store.dir names a directory: they are
+ * loaded from it on creation, and saved by a checkpoint every five minutes (tourguide.store.checkpoint-minutes) and on
+ * shutdown. Internal users are not generated when users were loaded, and are checkpointed once generated
+ * at startup. Loaded rewards get the ordinals the {@link AttractionCatalog} gives to their attractions, which may
+ * differ from the ones they were saved with if gpsUtil lists the attractions in another order.
+ * <p>
+ * The changes made between two checkpoints are kept in a {@link UserEventLog}, in the log subdirectory of the store:
+ * each user reports its new locations, rewards and points to the log, which writes them in the background. The log is
+ * replayed over the loaded users on creation, and the events held by a checkpoint are dropped once it is done.
  */
 @Service
 public class UserService {
     private Logger logger = LoggerFactory.getLogger(UserService.class);
 
     private static final String tripPricerApiKey = "test-server-api-key";
+    private static final String INTERNAL_USER_PREFIX = "internalUser";
+    private static final long SEED_GAMMA = 0x9E3779B97F4A7C15L; //Spreads the seeds of consecutive users
+    private static final long CHECKPOINT_MINUTES = Long.getLong("tourguide.store.checkpoint-minutes", 5);
     // Database connection will be used for external users, but for testing purposes
 // internal users are provided and stored in memory
 
-    private final Map<String, User> internalUserMap = new HashMap<>();
+    private final UserRepository userRepository = new UserRepository();
+    private final long seed;
+    private final boolean lazy;
+    private volatile int pendingInternalUsers; // internal users not generated yet in lazy mode
+    private LocalDateTime generationTime;
+    private final UserStore userStore;
+    private final UserEventLog eventLog;
+    private final AttractionCatalog attractionCatalog;
+    private final boolean restored;
+    private final ScheduledExecutorService checkpointScheduler;
+
+    /**
+     * Users kept in the user store named by the system properties, with the ordinals of the attraction catalog
+     */
+    @Autowired
+    public UserService(AttractionCatalog attractionCatalog) {
+        this(Long.getLong("tourguide.users.seed", new SplittableRandom().nextLong()),
+                Boolean.getBoolean("tourguide.users.lazy"),
+                System.getProperty("tourguide.store.dir") == null ? null : Path.of(System.getProperty("tourguide.store.dir")),
+                attractionCatalog);
+    }
+
+    /**
+     * Users only kept in memory, whatever the system properties
+     */
+    public UserService() {
+        this(Long.getLong("tourguide.users.seed", new SplittableRandom().nextLong()),
+                Boolean.getBoolean("tourguide.users.lazy"));
+    }
+
+    private UserService(long seed, boolean lazy, Path storeDirectory, AttractionCatalog attractionCatalog) {
+        this(seed, lazy, storeDirectory == null ? UserStore.NONE : new FileUserStore(storeDirectory),
+                storeDirectory == null ? UserEventLog.NONE : new FileUserEventLog(storeDirectory.resolve("log")),
+                attractionCatalog);
+    }
+
+    /**
+     * Users only kept in memory
+     *
+     * @param seed of the internal users
+     * @param lazy true to generate internal users when first needed
+     */
+    public UserService(long seed, boolean lazy) {
+        this(seed, lazy, UserStore.NONE, UserEventLog.NONE, null); //Nothing is loaded, so no attraction to map
+    }
+
+    /**
+     * Loads the users of the store, replays the events logged since, and schedules checkpoints unless the store keeps
+     * nothing
+     *
+     * @param attractionCatalog gives the loaded and replayed rewards the ordinals of the current attractions
+     * @throws UncheckedIOException if the users cannot be loaded, rather than starting without them
+     */
+    public UserService(long seed, boolean lazy, UserStore userStore, UserEventLog eventLog,
+                       AttractionCatalog attractionCatalog) {
+        this.seed = seed;
+        this.lazy = lazy;
+        this.userStore = userStore;
+        this.eventLog = eventLog;
+        this.attractionCatalog = attractionCatalog;
+        try {
+            List<User> users = userStore.load(attraction -> attractionCatalog.ordinalOf(attraction));
+            users.forEach(userRepository::add);
+            restored = !users.isEmpty();
+            long replayed = eventLog.replay(this::applyEvent);
+            if (replayed > 0) {
+                logger.info("Replayed " + replayed + " logged user events.");
+            }
+            users.forEach(this::logEvents);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to load users", e);
+        }
+        if (userStore != UserStore.NONE && CHECKPOINT_MINUTES > 0) {
+            checkpointScheduler = Executors.newSingleThreadScheduledExecutor(
+                    ExecutionMode.PLATFORM.threadFactory("user-checkpoint-"));
+            checkpointScheduler.scheduleWithFixedDelay(() -> {
+                try {
+                    checkpoint();
+                } catch (RuntimeException e) {
+                    logger.error("Failed to checkpoint users: " + e.getMessage());
+                }
+            }, CHECKPOINT_MINUTES, CHECKPOINT_MINUTES, TimeUnit.MINUTES);
+        } else {
+            checkpointScheduler = null;
+        }
+    }
 
     public User getUser(String userName) {
-        return internalUserMap.get(userName);
+        User user = userRepository.getByUserName(userName);
+        if (user == null && pendingInternalUsers > 0) {
+            int index = internalUserIndex(userName);
+            if (index >= 0) {
+                userRepository.add(generateInternalUser(index));
+                user = userRepository.getByUserName(userName); //The user may have been generated by another thread
+            }
+        }
+        return user;
     }
 
+    public User getUserById(UUID userId) {
+        User user = userRepository.getById(userId);
+        if (user == null && pendingInternalUsers > 0) {
+            generatePendingInternalUsers();
+            user = userRepository.getById(userId);
+        }
+        return user;
+    }
+
+    /**
+     * @return a copy of all users, prefer {@link #getUsers()} to go through them
+     */
     public List<User> getAllUsers() {
-        return internalUserMap.values().stream().collect(Collectors.toList());
+        generatePendingInternalUsers();
+        return new ArrayList<>(userRepository.getAll());
+    }
+
+    /**
+     * @return a read only view of all users, traversing it does not copy the users and users can be added meanwhile
+     */
+    public Collection<User> getUsers() {
+        generatePendingInternalUsers();
+        return userRepository.getAll();
+    }
+
+    /**
+     * @return a read only view of the users generated or added so far, without generating the pending internal users
+     * in lazy mode
+     */
+    public Collection<User> getGeneratedUsers() {
+        return userRepository.getAll();
     }
 
     public void addUser(User user) {
-        if (!internalUserMap.containsKey(user.getUserName())) {
-            internalUserMap.put(user.getUserName(), user);
+        if (userRepository.add(user)) {
+            logEvents(user);
+        }
+    }
+
+    /**
+     * Saves the users changed since the previous checkpoint to the user store
+     *
+     * @return the number of users written
+     */
+    public int checkpoint() {
+        if (userStore == UserStore.NONE) {
+            return 0; //Without going through the users, which would generate the pending internal users
+        }
+        try {
+            long position = eventLog.position(); //The events written before are held by the checkpoint
+            int written = userStore.checkpoint(getUsers());
+            eventLog.truncate(position);
+            return written;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to checkpoint users", e);
+        }
+    }
+
+    /**
+     * Stops the scheduled checkpoints, saves the users a last time and closes the event log
+     */
+    public void shutdown() {
+        if (checkpointScheduler != null) {
+            checkpointScheduler.shutdownNow();
+        }
+        checkpoint();
+        try {
+            eventLog.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to close the user event log", e);
+        }
+    }
+
+    /**
+     * @return true if users were loaded from the user store
+     */
+    public boolean isRestored() {
+        return restored;
+    }
+
+    /**
+     * Applies a logged event to its user, events already held by the loaded users change nothing. Rewards are matched
+     * to the current attractions by name, the logged ordinals being those of the run that wrote them.
+     */
+    private void applyEvent(UserEvent event) {
+        User user = userRepository.getById(event.userId());
+        if (user == null) {
+            return; //Logged before the user was first checkpointed
+        }
+        if (event instanceof UserEvent.LocationAdded location) {
+            if (isAfterLastLocation(user, location)) {
+                user.addToVisitedLocations(location.toVisitedLocation());
+            }
+        } else if (event instanceof UserEvent.RewardAdded reward) {
+            user.addUserReward(reward.toUserReward(attractionCatalog.ordinalOf(reward.attraction())));
+        } else if (event instanceof UserEvent.RewardPointsSet points) {
+            user.setRewardPoints(attractionCatalog.ordinalOf(points.attraction()), points.rewardPoints());
+        }
+    }
+
+    /**
+     * Locations are logged in the order they are added, a location not after the last one is already held
+     */
+    private boolean isAfterLastLocation(User user, UserEvent.LocationAdded location) {
+        if (user.getVisitedLocations().isEmpty()) {
+            return true;
+        }
+        VisitedLocation last = user.getLastVisitedLocation();
+        long lastTime = last.timeVisited.getTime();
+        return location.time() > lastTime || location.time() == lastTime
+                && (location.latitude() != last.location.latitude || location.longitude() != last.location.longitude);
+    }
+
+    private void logEvents(User user) {
+        if (eventLog != UserEventLog.NONE) {
+            user.setEventListener(eventLog::append);
         }
     }
 
@@ -52,40 +286,99 @@ public class UserService {
     }
 
     public void initializeInternalUsers() {
-        IntStream.range(0, InternalTestHelper.getInternalUserNumber()).forEach(i -> {
-            String userName = "internalUser" + i;
-            String phone = "000";
-            String email = userName + "@tourGuide.com";
-            User user = new User(UUID.randomUUID(), userName, phone, email);
-            generateUserLocationHistory(user);
-
-            internalUserMap.put(userName, user);
-        });
+        if (restored) {
+            logger.info("Users loaded from the user store, internal test users are not created.");
+            return;
+        }
+        generationTime = LocalDateTime.now();
+        pendingInternalUsers = InternalTestHelper.getInternalUserNumber();
+        logger.info("Internal test users seed: " + seed);
+        if (lazy) {
+            logger.info("Internal test users will be created when first needed.");
+        } else {
+            generatePendingInternalUsers();
+            if (userStore != UserStore.NONE) {
+                checkpoint(); //So that the events logged from now on apply to users that can be loaded
+            }
+        }
+    }
+
+    /**
+     * Generates all internal users not generated yet, callers wait until they are all added
+     */
+    private void generatePendingInternalUsers() {
+        if (pendingInternalUsers == 0) {
+            return;
+        }
+        synchronized (this) {
+            int count = pendingInternalUsers;
+            if (count == 0) {
+                return;
+            }
+            IntStream.range(0, count).parallel().forEach(i -> userRepository.add(generateInternalUser(i)));
+            pendingInternalUsers = 0;
+            logger.info("Created " + count + " internal test users.");
+        }
+    }
 
-        logger.info("Created " + InternalTestHelper.getInternalUserNumber() + " internal test users.");
+    /**
+     * @return the index of the internal user with this name, or -1 if it is not a pending internal user
+     */
+    private int internalUserIndex(String userName) {
+        if (userName == null || !userName.startsWith(INTERNAL_USER_PREFIX)) {
+            return -1;
+        }
+        try {
+            int index = Integer.parseInt(userName.substring(INTERNAL_USER_PREFIX.length()));
+            return index >= 0 && index < pendingInternalUsers
+                    && userName.equals(INTERNAL_USER_PREFIX + index) ? index : -1;
+        } catch (NumberFormatException e) {
+            return -1;
+        }
     }
 
-    private void generateUserLocationHistory(User user) {
+    private User generateInternalUser(int index) {
+        SplittableRandom random = new SplittableRandom(seed + index * SEED_GAMMA);
+        String userName = INTERNAL_USER_PREFIX + index;
+        String phone = "000";
+        String email = userName + "@tourGuide.com";
+        User user = new User(randomUUID(random), userName, phone, email);
+        generateUserLocationHistory(user, random);
+        logEvents(user); //The generated history is not logged
+        return user;
+    }
+
+    private void generateUserLocationHistory(User user, SplittableRandom random) {
         IntStream.range(0, 3).forEach(i -> {
             user.addToVisitedLocations(new VisitedLocation(user.getUserId(),
-                    new Location(generateRandomLatitude(), generateRandomLongitude()), getRandomTime()));
+                    new Location(generateRandomLatitude(random), generateRandomLongitude(random)),
+                    getRandomTime(random)));
         });
     }
 
-    private double generateRandomLongitude() {
+    /**
+     * @return a version 4 UUID whose random bits come from the generator
+     */
+    private UUID randomUUID(SplittableRandom random) {
+        long mostSigBits = (random.nextLong() & ~0xF000L) | 0x4000L;
+        long leastSigBits = (random.nextLong() & 0x3FFFFFFFFFFFFFFFL) | 0x8000000000000000L;
+        return new UUID(mostSigBits, leastSigBits);
+    }
+
+    private double generateRandomLongitude(SplittableRandom random) {
         double leftLimit = -180;
         double rightLimit = 180;
-        return leftLimit + new Random().nextDouble() * (rightLimit - leftLimit);
+        return leftLimit + random.nextDouble() * (rightLimit - leftLimit);
     }
 
-    private double generateRandomLatitude() {
+    private double generateRandomLatitude(SplittableRandom random) {
         double leftLimit = -85.05112878;
         double rightLimit = 85.05112878;
-        return leftLimit + new Random().nextDouble() * (rightLimit - leftLimit);
+        return leftLimit + random.nextDouble() * (rightLimit - leftLimit);
     }
 
-    private Date getRandomTime() {
-        LocalDateTime localDateTime = LocalDateTime.now().minusDays(new Random().nextInt(30));
+    private Date getRandomTime(SplittableRandom random) {
+        LocalDateTime localDateTime = generationTime.minusDays(random.nextInt(30));
         return Date.from(localDateTime.toInstant(ZoneOffset.UTC));
     }
 }
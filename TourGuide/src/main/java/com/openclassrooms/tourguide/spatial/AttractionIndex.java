@@ -0,0 +1,224 @@
+package com.openclassrooms.tourguide.spatial;
+
+import gpsUtil.location.Attraction;
+import gpsUtil.location.Location;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.stream.IntStream;
+
+/**
+ * Immutable spatial index of the attractions, built once from the list returned by gpsUtil.
+ * <p>
+ * Every attraction is projected on the unit sphere and stored in a 3 dimensional k-d tree. The straight line (chord)
+ * between two points of the sphere grows with their great circle distance, so searching the tree for the closest
+ * chords gives the same attractions as the great circle formula while only visiting a few branches of the tree.
+ * The sine and cosine of the latitude of every attraction are also computed once, so only the searched location needs
+ * trigonometry when the distances of the remaining candidates are checked.
+ */
+public class AttractionIndex {
+
+    // Margin on the chord so that rounding never excludes an attraction the exact formula would accept
+    private static final double CHORD_TOLERANCE = 1e-7;
+
+    private final List<Attraction> attractions;
+    private final Attraction[] tree;
+    private final int[] positions; // position of each node reported by searches
+    private final double[] coordinates;
+    private final GeoPoint[] points;
+
+    public AttractionIndex(List<Attraction> attractions) {
+        this(attractions, IntStream.range(0, attractions.size()).toArray());
+    }
+
+    /**
+     * @param positions reported by {@link #getPositionsWithin(Location, double)} for each attraction, in the same order
+     */
+    public AttractionIndex(List<Attraction> attractions, int[] positions) {
+        if (positions.length != attractions.size()) {
+            throw new IllegalArgumentException("Expected one position per attraction");
+        }
+        this.attractions = List.copyOf(attractions);
+        tree = this.attractions.toArray(new Attraction[0]);
+        //Build the tree on the indexes of the list, then replace them with the reported positions
+        this.positions = IntStream.range(0, tree.length).toArray();
+        build(0, tree.length, 0);
+        for (int i = 0; i < tree.length; i++) {
+            this.positions[i] = positions[this.positions[i]];
+        }
+
+        coordinates = new double[tree.length * 3];
+        points = new GeoPoint[tree.length];
+        for (int i = 0; i < tree.length; i++) {
+            toUnitVector(tree[i], coordinates, i * 3);
+            points[i] = GeoPoint.of(tree[i]);
+        }
+    }
+
+    /**
+     * @return all indexed attractions, in the order they were provided
+     */
+    public List<Attraction> getAttractions() {
+        return attractions;
+    }
+
+    public int size() {
+        return tree.length;
+    }
+
+    /**
+     * Finds all attractions whose great circle distance to the location is not greater than the given number of miles
+     *
+     * @param location the point to search around
+     * @param miles    the search radius
+     * @return the matching attractions, in no particular order
+     */
+    public List<Attraction> getAttractionsWithin(Location location, double miles) {
+        return nodesWithin(location, miles).mapToObj(node -> tree[node]).toList();
+    }
+
+    /**
+     * Same search as {@link #getAttractionsWithin(Location, double)}, returning the positions of the attractions,
+     * which are their indexes in the list the index was built from unless other positions were given
+     */
+    public int[] getPositionsWithin(Location location, double miles) {
+        return nodesWithin(location, miles).map(node -> positions[node]).toArray();
+    }
+
+    private IntStream nodesWithin(Location location, double miles) {
+        IntStream.Builder result = IntStream.builder();
+        double angle = miles / DistanceCalculator.MILES_PER_RADIAN;
+        double chord = angle >= Math.PI ? 2 : 2 * Math.sin(angle / 2);
+        double maxChord = (chord + CHORD_TOLERANCE) * (chord + CHORD_TOLERANCE);
+
+        double[] vector = new double[3];
+        toUnitVector(location, vector, 0);
+        RadiusQuery query = new RadiusQuery(vector, maxChord, GeoPoint.of(location), miles,
+                DistanceCalculator.cosLimit(miles));
+        within(0, tree.length, 0, query, result);
+        return result.build();
+    }
+
+    /**
+     * Finds the k attractions closest to the location
+     *
+     * @param location the point to search around
+     * @param k        the maximum number of attractions to return
+     * @return the closest attractions with their distance in miles, sorted from the closest
+     */
+    public List<NearbyAttraction> getNearestAttractions(Location location, int k) {
+        if (k <= 0 || tree.length == 0) {
+            return List.of();
+        }
+        double[] query = new double[3];
+        toUnitVector(location, query, 0);
+
+        //Max heap on the squared chord, the head is the furthest of the k best candidates found so far
+        PriorityQueue<Candidate> heap = new PriorityQueue<>(k + 1,
+                Comparator.comparingDouble(Candidate::chord).reversed());
+        nearest(0, tree.length, 0, query, k, heap);
+
+        List<NearbyAttraction> result = new ArrayList<>(heap.size());
+        GeoPoint point = GeoPoint.of(location);
+        heap.forEach(candidate -> result.add(new NearbyAttraction(tree[candidate.node()],
+                DistanceCalculator.getDistance(point, points[candidate.node()]))));
+        result.sort(Comparator.comparingDouble(NearbyAttraction::distance));
+        return result;
+    }
+
+    /**
+     * Sorts the range so that the median on the current axis sits in the middle, with the lower half on its left and
+     * the upper half on its right, then does the same for both halves on the next axis
+     */
+    private void build(int from, int to, int depth) {
+        if (to - from <= 1) {
+            return;
+        }
+        int axis = depth % 3;
+        double[] vector = new double[3];
+        //Sort the positions and reorder the attractions after them, so both stay aligned
+        Integer[] sorted = IntStream.range(from, to).mapToObj(node -> positions[node]).toArray(Integer[]::new);
+        Arrays.sort(sorted, Comparator.comparingDouble(position -> {
+            toUnitVector(attractions.get(position), vector, 0);
+            return vector[axis];
+        }));
+        for (int i = 0; i < sorted.length; i++) {
+            positions[from + i] = sorted[i];
+            tree[from + i] = attractions.get(sorted[i]);
+        }
+        int mid = (from + to) >>> 1;
+        build(from, mid, depth + 1);
+        build(mid + 1, to, depth + 1);
+    }
+
+    private void within(int from, int to, int depth, RadiusQuery query, IntStream.Builder result) {
+        if (from >= to) {
+            return;
+        }
+        int mid = (from + to) >>> 1;
+        //The chord only discards far away attractions, the remaining ones are confirmed with the great circle formula
+        if (squaredChord(mid, query.vector()) <= query.maxChord()
+                && DistanceCalculator.isWithin(points[mid], query.point(), query.miles(), query.cosLimit())) {
+            result.add(mid);
+        }
+        double diff = query.vector()[depth % 3] - coordinates[mid * 3 + depth % 3];
+        if (diff <= 0 || diff * diff <= query.maxChord()) {
+            within(from, mid, depth + 1, query, result);
+        }
+        if (diff >= 0 || diff * diff <= query.maxChord()) {
+            within(mid + 1, to, depth + 1, query, result);
+        }
+    }
+
+    private void nearest(int from, int to, int depth, double[] query, int k, PriorityQueue<Candidate> heap) {
+        if (from >= to) {
+            return;
+        }
+        int mid = (from + to) >>> 1;
+        double chord = squaredChord(mid, query);
+        if (heap.size() < k) {
+            heap.add(new Candidate(mid, chord));
+        } else if (chord < heap.peek().chord()) {
+            heap.poll();
+            heap.add(new Candidate(mid, chord));
+        }
+
+        double diff = query[depth % 3] - coordinates[mid * 3 + depth % 3];
+        boolean leftFirst = diff < 0;
+        nearest(leftFirst ? from : mid + 1, leftFirst ? mid : to, depth + 1, query, k, heap);
+        //Only visit the other side if it can hold something closer than the current k-th candidate
+        if (heap.size() < k || diff * diff < heap.peek().chord()) {
+            nearest(leftFirst ? mid + 1 : from, leftFirst ? to : mid, depth + 1, query, k, heap);
+        }
+    }
+
+    private double squaredChord(int node, double[] query) {
+        double dx = coordinates[node * 3] - query[0];
+        double dy = coordinates[node * 3 + 1] - query[1];
+        double dz = coordinates[node * 3 + 2] - query[2];
+        return dx * dx + dy * dy + dz * dz;
+    }
+
+    private static void toUnitVector(Location location, double[] vector, int offset) {
+        double lat = Math.toRadians(location.latitude);
+        double lon = Math.toRadians(location.longitude);
+        vector[offset] = Math.cos(lat) * Math.cos(lon);
+        vector[offset + 1] = Math.cos(lat) * Math.sin(lon);
+        vector[offset + 2] = Math.sin(lat);
+    }
+
+    private record Candidate(int node, double chord) {
+    }
+
+    private record RadiusQuery(double[] vector, double maxChord, GeoPoint point, double miles, double cosLimit) {
+    }
+
+    /**
+     * An attraction returned by a nearest neighbour search with its distance in miles to the searched location
+     */
+    public record NearbyAttraction(Attraction attraction, double distance) {
+    }
+}
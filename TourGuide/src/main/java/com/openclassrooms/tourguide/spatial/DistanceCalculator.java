@@ -0,0 +1,64 @@
+package com.openclassrooms.tourguide.spatial;
+
+import gpsUtil.location.Location;
+
+/**
+ * Great circle distance between two locations, in statute miles
+ */
+public final class DistanceCalculator {
+
+    public static final double STATUTE_MILES_PER_NAUTICAL_MILE = 1.15077945;
+    static final double MILES_PER_RADIAN = STATUTE_MILES_PER_NAUTICAL_MILE * 60 * Math.toDegrees(1);
+    // Margin around the cosine of the limit, far larger than the rounding errors of both ways of comparing
+    private static final double COSINE_TOLERANCE = 1e-12;
+
+    private DistanceCalculator() {
+    }
+
+    public static double getDistance(Location loc1, Location loc2) {
+        return getDistance(GeoPoint.of(loc1), GeoPoint.of(loc2));
+    }
+
+    public static double getDistance(GeoPoint point1, GeoPoint point2) {
+        double angle = Math.acos(cosAngle(point1, point2));
+
+        double nauticalMiles = 60 * Math.toDegrees(angle);
+        return STATUTE_MILES_PER_NAUTICAL_MILE * nauticalMiles;
+    }
+
+    /**
+     * @param miles a distance
+     * @return the cosine of the angle between two points this far apart, to pass to
+     * {@link #isWithin(GeoPoint, GeoPoint, double, double)}
+     */
+    public static double cosLimit(double miles) {
+        double angle = miles / MILES_PER_RADIAN;
+        return angle >= Math.PI ? Double.NEGATIVE_INFINITY : Math.cos(angle);
+    }
+
+    /**
+     * Tells whether two points are within the given distance, with the same result as
+     * {@code !(getDistance(point1, point2) > miles)}. The cosine of the angle between the points is compared to the
+     * cosine of the limit, and the exact distance is only computed when both are too close to tell.
+     *
+     * @param cosLimit the value of {@link #cosLimit(double)} for the same distance
+     */
+    public static boolean isWithin(GeoPoint point1, GeoPoint point2, double miles, double cosLimit) {
+        double cosAngle = cosAngle(point1, point2);
+        if (cosAngle > 1 || cosAngle < -1) {
+            return true; //The distance is NaN, which is never greater than the limit
+        }
+        if (cosAngle >= cosLimit + COSINE_TOLERANCE) {
+            return true;
+        }
+        if (cosAngle <= cosLimit - COSINE_TOLERANCE) {
+            return false;
+        }
+        return !(getDistance(point1, point2) > miles);
+    }
+
+    private static double cosAngle(GeoPoint point1, GeoPoint point2) {
+        return point1.sinLatitude() * point2.sinLatitude()
+                + point1.cosLatitude() * point2.cosLatitude() * Math.cos(point1.longitude() - point2.longitude());
+    }
+}
@@ -0,0 +1,19 @@
+package com.openclassrooms.tourguide.spatial;
+
+import gpsUtil.location.Location;
+
+/**
+ * A location with the trigonometry used by the distance formula computed once, for points that are compared many
+ * times such as attractions
+ */
+public record GeoPoint(double longitude, double sinLatitude, double cosLatitude) {
+
+    /**
+     * @param location to convert
+     * @return the point, with its longitude in radians
+     */
+    public static GeoPoint of(Location location) {
+        double latitude = Math.toRadians(location.latitude);
+        return new GeoPoint(Math.toRadians(location.longitude), Math.sin(latitude), Math.cos(latitude));
+    }
+}
@@ -1,29 +1,49 @@
 package com.openclassrooms.tourguide.tracker;
 
-import java.util.List;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 import com.openclassrooms.tourguide.service.UserService;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Timer;
 import org.apache.commons.lang3.time.StopWatch;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import com.openclassrooms.tourguide.service.TourGuideService;
 import com.openclassrooms.tourguide.model.User;
 
+/**
+ * Tracks all users every five minutes. Publishes the metrics tourguide.tracker.cycle (duration of the cycles),
+ * tourguide.tracker.stage (time spent by each stage of a cycle) and tourguide.tracker.lag (seconds since the start of
+ * the last completed cycle, which is the age of the oldest tracked location)
+ */
 public class Tracker extends Thread {
     private Logger logger = LoggerFactory.getLogger(Tracker.class);
     private static final long trackingPollingInterval = TimeUnit.MINUTES.toSeconds(5);
     private final ExecutorService executorService = Executors.newSingleThreadExecutor();
-    private final TourGuideService tourGuideService;
+    private final TrackingPipeline trackingPipeline;
     private final UserService userService;
     private boolean stop = false;
+    private final Timer cycleTimer = Timer.builder("tourguide.tracker.cycle")
+            .description("Duration of a tracking cycle over all users")
+            .register(Metrics.globalRegistry);
+    private final Map<String, Timer> stageTimers = new HashMap<>(); // by stage, only used by the tracker thread
+    private final AtomicLong lastCycleStart = new AtomicLong(System.nanoTime());
 
-    public Tracker(UserService userService, TourGuideService tourGuideService) {
+    public Tracker(UserService userService, TrackingPipeline trackingPipeline) {
         this.userService=userService;
-        this.tourGuideService = tourGuideService;
+        this.trackingPipeline = trackingPipeline;
+        Gauge.builder("tourguide.tracker.lag", lastCycleStart,
+                        start -> (System.nanoTime() - start.get()) / (double) TimeUnit.SECONDS.toNanos(1))
+                .description("Seconds since the start of the last completed tracking cycle")
+                .baseUnit("seconds")
+                .register(Metrics.globalRegistry);
 
         executorService.submit(this);
     }
@@ -45,11 +65,25 @@ public class Tracker extends Thread {
                 break;
             }
 
-            List<User> users = userService.getAllUsers();
+            Collection<User> users = userService.getGeneratedUsers(); //Internal users not generated yet are not tracked
             logger.debug("Begin Tracker. Tracking " + users.size() + " users.");
+            long cycleStart = System.nanoTime();
             stopWatch.start();
-            users.parallelStream().forEach(tourGuideService::trackUserLocation);
+            try {
+                trackingPipeline.track(users).forEach(report -> {
+                    logger.debug("Tracker " + report);
+                    stageTimers.computeIfAbsent(report.stage(), stage -> Timer.builder("tourguide.tracker.stage")
+                                    .description("Time spent by a stage of a tracking cycle")
+                                    .tag("stage", stage)
+                                    .register(Metrics.globalRegistry))
+                            .record(report.elapsedMillis(), TimeUnit.MILLISECONDS);
+                });
+            } catch (InterruptedException e) {
+                break;
+            }
             stopWatch.stop();
+            cycleTimer.record(System.nanoTime() - cycleStart, TimeUnit.NANOSECONDS);
+            lastCycleStart.set(cycleStart);
             logger.debug("Tracker Time Elapsed: " + TimeUnit.MILLISECONDS.toSeconds(stopWatch.getTime()) + " seconds.");
             stopWatch.reset();
             try {
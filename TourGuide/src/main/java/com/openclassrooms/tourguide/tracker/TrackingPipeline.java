@@ -0,0 +1,308 @@
+package com.openclassrooms.tourguide.tracker;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.openclassrooms.tourguide.model.User;
+import com.openclassrooms.tourguide.service.ExecutionMode;
+import com.openclassrooms.tourguide.service.GpsUtilService;
+import com.openclassrooms.tourguide.service.RewardsService;
+
+import gpsUtil.location.VisitedLocation;
+
+/**
+ * Tracks a list of users in batches, through four stages connected by bounded queues:
+ * <ol>
+ *     <li>fetch: gets the current location of each user of the batch from gpsUtil</li>
+ *     <li>append: adds the locations to the users</li>
+ *     <li>rewards: adds a user reward for each attraction close to the new locations</li>
+ *     <li>points: fetches the points of each new user reward from RewardCentral</li>
+ * </ol>
+ * Each stage runs on its own fixed number of workers calling the libraries directly, so a cycle does not create a
+ * future or a task per user. A full queue makes the previous stage wait, which keeps memory bounded.
+ * Workers are platform or virtual threads depending on the {@link ExecutionMode}.
+ */
+public class TrackingPipeline {
+
+    public static final int DEFAULT_BATCH_SIZE = 100;
+    public static final int DEFAULT_FETCH_CONCURRENCY = 100;
+    public static final int DEFAULT_POINTS_CONCURRENCY = 100;
+    private static final int QUEUE_CAPACITY = 16;
+    private static final Object END = new Object(); //Sent through a queue once the previous stage is done
+
+    private final Logger logger = LoggerFactory.getLogger(TrackingPipeline.class);
+    private final GpsUtilService gpsUtilService;
+    private final RewardsService rewardsService;
+    private final int batchSize;
+    private final int fetchConcurrency;
+    private final int pointsConcurrency;
+    private final ExecutionMode executionMode = ExecutionMode.current();
+
+    public TrackingPipeline(GpsUtilService gpsUtilService, RewardsService rewardsService) {
+        this(gpsUtilService, rewardsService, DEFAULT_BATCH_SIZE, DEFAULT_FETCH_CONCURRENCY, DEFAULT_POINTS_CONCURRENCY);
+    }
+
+    /**
+     * @param batchSize         number of users handed from one stage to the next at once
+     * @param fetchConcurrency  number of gpsUtil calls running at the same time
+     * @param pointsConcurrency number of RewardCentral calls running at the same time
+     */
+    public TrackingPipeline(GpsUtilService gpsUtilService, RewardsService rewardsService, int batchSize,
+                            int fetchConcurrency, int pointsConcurrency) {
+        if (batchSize < 1 || fetchConcurrency < 1 || pointsConcurrency < 1) {
+            throw new IllegalArgumentException("Batch size and concurrency must be positive");
+        }
+        this.gpsUtilService = gpsUtilService;
+        this.rewardsService = rewardsService;
+        this.batchSize = batchSize;
+        this.fetchConcurrency = fetchConcurrency;
+        this.pointsConcurrency = pointsConcurrency;
+    }
+
+    /**
+     * Tracks all the users and waits until every stage is done
+     *
+     * @param users to track, traversed once to build the batches
+     * @return the number of items handled and the time spent by each stage
+     * @throws InterruptedException if the calling thread is interrupted, the stages are then stopped
+     */
+    public List<StageReport> track(Collection<User> users) throws InterruptedException {
+        Stage<PendingReward> points = new Stage<>("points", pointsConcurrency, this::fetchPoints, null,
+                pending -> pending.newReward().settle());
+        Stage<List<User>> rewards = new Stage<>("rewards", Runtime.getRuntime().availableProcessors(),
+                batch -> addRewards(batch, points), points, null);
+        Stage<List<TrackedLocation>> append = new Stage<>("append", 1, batch -> appendLocations(batch, rewards), rewards,
+                null);
+        Stage<List<User>> fetch = new Stage<>("fetch", fetchConcurrency, batch -> fetchLocations(batch, append), append,
+                null);
+        List<Stage<?>> stages = List.of(fetch, append, rewards, points);
+
+        long start = System.nanoTime();
+        stages.forEach(stage -> stage.start(start));
+        try {
+            List<User> batch = new ArrayList<>(batchSize);
+            for (User user : users) {
+                batch.add(user);
+                if (batch.size() == batchSize) {
+                    fetch.put(batch);
+                    batch = new ArrayList<>(batchSize);
+                }
+            }
+            if (!batch.isEmpty()) {
+                fetch.put(batch);
+            }
+            fetch.put(END);
+            for (Stage<?> stage : stages) {
+                stage.join();
+            }
+        } catch (InterruptedException e) {
+            stages.forEach(Stage::interrupt);
+            throw e;
+        }
+        return stages.stream().map(Stage::report).toList();
+    }
+
+    private int fetchLocations(List<User> batch, Stage<List<TrackedLocation>> next) throws InterruptedException {
+        List<TrackedLocation> locations = new ArrayList<>(batch.size());
+        for (User user : batch) {
+            try {
+                locations.add(new TrackedLocation(user, gpsUtilService.fetchUserLocation(user.getUserId())));
+            } catch (RuntimeException e) {
+                logger.error("Skipping user " + user.getUserName() + " for this cycle");
+            }
+        }
+        next.put(locations);
+        return locations.size();
+    }
+
+    private int appendLocations(List<TrackedLocation> batch, Stage<List<User>> next) throws InterruptedException {
+        List<User> tracked = new ArrayList<>(batch.size());
+        for (TrackedLocation location : batch) {
+            location.user().addToVisitedLocations(location.location());
+            tracked.add(location.user());
+        }
+        next.put(tracked);
+        return tracked.size();
+    }
+
+    /**
+     * New rewards are rare and each one costs a slow RewardCentral call, so they are handed to the next stage one by
+     * one to spread them over all the points workers. Each reward stays pending on its user until the points stage
+     * settles it, after fetching its points or when dropping it.
+     */
+    private int addRewards(List<User> batch, Stage<PendingReward> next) throws InterruptedException {
+        for (User user : batch) {
+            List<RewardsService.NewReward> newRewards = rewardsService.addNewRewards(user);
+            for (int i = 0; i < newRewards.size(); i++) {
+                try {
+                    next.put(new PendingReward(user, newRewards.get(i)));
+                } catch (InterruptedException e) {
+                    newRewards.subList(i, newRewards.size()).forEach(RewardsService.NewReward::settle);
+                    throw e;
+                }
+            }
+        }
+        return batch.size();
+    }
+
+    private int fetchPoints(PendingReward pending) {
+        try {
+            rewardsService.updateRewardPoints(pending.newReward(), pending.user());
+            return 1;
+        } catch (RuntimeException e) {
+            logger.error("Failed to update reward points of user " + pending.user().getUserName());
+            return 0;
+        }
+    }
+
+    private record TrackedLocation(User user, VisitedLocation location) {
+    }
+
+    private record PendingReward(User user, RewardsService.NewReward newReward) {
+    }
+
+    /**
+     * Number of items handled by a stage, the time from the start of the cycle until the stage was done and the time
+     * its workers spent handling items
+     */
+    public record StageReport(String stage, long items, long elapsedMillis, long busyMillis) {
+
+        public double itemsPerSecond() {
+            return elapsedMillis == 0 ? items : items * 1000.0 / elapsedMillis;
+        }
+
+        @Override
+        public String toString() {
+            return stage + ": " + items + " items in " + elapsedMillis + " ms (" + Math.round(itemsPerSecond())
+                    + "/s, busy " + busyMillis + " ms)";
+        }
+    }
+
+    @FunctionalInterface
+    private interface BatchHandler<T> {
+        int handle(T batch) throws InterruptedException;
+    }
+
+    /**
+     * Workers taking batches from a bounded queue. When a worker takes the end marker it puts it back for the other
+     * workers, and the last one to stop sends the marker to the next stage, even when it stops on an error so that the
+     * cycle still ends. Batches sent to a stage whose workers all stopped are dropped, as well as the batches left in
+     * its queue, each one exactly once.
+     */
+    private class Stage<T> {
+        private final String name;
+        private final BatchHandler<T> handler;
+        private final Stage<?> next;
+        private final Consumer<T> onDrop; //Null when dropped batches need no cleanup
+        private final BlockingQueue<Object> queue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+        private final List<Thread> workers = new ArrayList<>();
+        private final AtomicInteger runningWorkers;
+        private final LongAdder items = new LongAdder();
+        private final LongAdder busyNanos = new LongAdder();
+        private long start;
+        private volatile long end;
+
+        /**
+         * @param onDrop called with each batch dropped, null if dropping a batch needs no cleanup
+         */
+        Stage(String name, int workerCount, BatchHandler<T> handler, Stage<?> next, Consumer<T> onDrop) {
+            this.name = name;
+            this.handler = handler;
+            this.next = next;
+            this.onDrop = onDrop;
+            runningWorkers = new AtomicInteger(workerCount);
+            ThreadFactory threadFactory = executionMode.threadFactory("tracker-" + name + "-");
+            for (int i = 0; i < workerCount; i++) {
+                workers.add(threadFactory.newThread(this::work));
+            }
+        }
+
+        void start(long start) {
+            this.start = start;
+            workers.forEach(Thread::start);
+        }
+
+        void put(Object batch) throws InterruptedException {
+            while (!queue.offer(batch, 100, TimeUnit.MILLISECONDS)) {
+                if (runningWorkers.get() == 0) {
+                    drop(batch); //No worker left to take it
+                    return;
+                }
+            }
+            if (runningWorkers.get() == 0 && queue.remove(batch)) {
+                drop(batch); //Queued after the last worker drained the queue
+            }
+        }
+
+        void join() throws InterruptedException {
+            for (Thread worker : workers) {
+                worker.join();
+            }
+        }
+
+        void interrupt() {
+            workers.forEach(Thread::interrupt);
+        }
+
+        @SuppressWarnings("unchecked")
+        private void drop(Object batch) {
+            if (batch != END && onDrop != null) {
+                onDrop.accept((T) batch);
+            }
+        }
+
+        StageReport report() {
+            return new StageReport(name, items.sum(), TimeUnit.NANOSECONDS.toMillis(end - start),
+                    TimeUnit.NANOSECONDS.toMillis(busyNanos.sum()));
+        }
+
+        @SuppressWarnings("unchecked")
+        private void work() {
+            boolean interrupted = false;
+            try {
+                while (true) {
+                    Object batch = queue.take();
+                    if (batch == END) {
+                        queue.put(END);
+                        break;
+                    }
+                    long begin = System.nanoTime();
+                    try {
+                        items.add(handler.handle((T) batch));
+                    } catch (RuntimeException e) {
+                        logger.error("Tracker stage " + name + " failed on a batch: " + e.getMessage());
+                    }
+                    busyNanos.add(System.nanoTime() - begin);
+                }
+            } catch (InterruptedException e) {
+                interrupted = true;
+                Thread.currentThread().interrupt();
+            } finally {
+                if (runningWorkers.decrementAndGet() == 0) {
+                    end = System.nanoTime();
+                    for (Object batch = queue.poll(); batch != null; batch = queue.poll()) {
+                        drop(batch);
+                    }
+                    if (next != null && !interrupted) { //An interrupted cycle interrupts every stage
+                        try {
+                            next.put(END);
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                        }
+                    }
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package com.openclassrooms.tourguide;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import com.openclassrooms.tourguide.limit.AdaptiveLimiter;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TestAdaptiveLimiter {
+
+    private static final long MILLIS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    @Test
+    public void growsWhileLatencyIsSteady() {
+        //Given a limiter fully used by calls of a steady latency
+        AdaptiveLimiter limiter = new AdaptiveLimiter(20, 1, 100);
+
+        //When many rounds of calls complete
+        runRounds(limiter, 100, 10 * MILLIS, false);
+
+        //Then the limit should have grown up to its maximum
+        assertEquals(100, limiter.getLimit());
+    }
+
+    @Test
+    public void shrinksWhenLatencyRises() {
+        //Given a limiter that learned a latency of 10 ms
+        AdaptiveLimiter limiter = new AdaptiveLimiter(50, 5, 100);
+        runRounds(limiter, 5, 10 * MILLIS, false);
+        int learned = limiter.getLimit();
+
+        //When the dependency degrades to 100 ms
+        runRounds(limiter, 20, 100 * MILLIS, false);
+
+        //Then the limit should shrink
+        assertTrue(limiter.getLimit() < learned / 2, "Limit " + limiter.getLimit() + " learned " + learned);
+    }
+
+    @Test
+    public void backsOffOnFailures() {
+        //Given a limiter whose calls fail
+        AdaptiveLimiter limiter = new AdaptiveLimiter(50, 10, 100);
+
+        //When rounds of failed calls complete
+        runRounds(limiter, 30, MILLIS, true);
+
+        //Then the limit should fall to its minimum
+        assertEquals(10, limiter.getLimit());
+    }
+
+    @Test
+    public void queuesRequestsWithoutPermit() {
+        //Given a limiter of two permits, both in use
+        AdaptiveLimiter limiter = AdaptiveLimiter.fixed(2);
+        assertTrue(limiter.tryAcquire());
+        assertTrue(limiter.acquire().isDone());
+        assertFalse(limiter.tryAcquire());
+
+        //When three more permits are requested, and the second request is given up
+        CompletableFuture<Void> first = limiter.acquire();
+        CompletableFuture<Void> second = limiter.acquire();
+        CompletableFuture<Void> third = limiter.acquire();
+        assertEquals(3, limiter.getQueued());
+        assertTrue(second.cancel(false));
+
+        //Then released permits should go to the waiting requests in order, skipping the cancelled one
+        assertFalse(first.isDone());
+        limiter.release(MILLIS, false);
+        assertTrue(first.isDone());
+        assertFalse(third.isDone());
+        limiter.release();
+        assertTrue(third.isDone());
+        assertEquals(0, limiter.getQueued());
+        assertEquals(2, limiter.getInflight());
+        assertEquals(2, limiter.getLimit());
+    }
+
+    /**
+     * Acquires every permit of the current limit then releases them all with the latency, round after round
+     */
+    private void runRounds(AdaptiveLimiter limiter, int rounds, long rttNanos, boolean dropped) {
+        for (int round = 0; round < rounds; round++) {
+            int permits = 0;
+            while (limiter.tryAcquire()) {
+                permits++;
+            }
+            for (int i = 0; i < permits; i++) {
+                limiter.release(rttNanos, dropped);
+            }
+        }
+    }
+}
@@ -0,0 +1,118 @@
+package com.openclassrooms.tourguide;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.openclassrooms.tourguide.repository.AttractionRegistry;
+import com.openclassrooms.tourguide.service.AttractionCatalog;
+import com.openclassrooms.tourguide.service.GpsUtilService;
+import org.junit.jupiter.api.Test;
+
+import gpsUtil.GpsUtil;
+import gpsUtil.location.Attraction;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TestAttractionCatalog {
+
+    @Test
+    public void refreshKeepsOrdinals() {
+        //Given a catalog loaded from gpsUtil, which returns new attraction ids on every call
+        AttractionCatalog catalog = new AttractionCatalog(new GpsUtilService(new GpsUtil()), 0);
+        AttractionCatalog.Snapshot first = catalog.getSnapshot();
+
+        //When refreshing the attractions
+        AttractionCatalog.Snapshot second = catalog.refresh().join();
+
+        //Then the new snapshot should be served, with the same ordinals and the latest attractions
+        assertSame(second, catalog.getSnapshot());
+        assertEquals(first.version() + 1, second.version());
+        assertEquals(first.registry().size(), second.registry().size());
+        for (int ordinal = 0; ordinal < first.registry().size(); ordinal++) {
+            assertEquals(first.registry().get(ordinal).attractionName, second.registry().get(ordinal).attractionName);
+            assertNotEquals(first.registry().get(ordinal).attractionId, second.registry().get(ordinal).attractionId);
+        }
+    }
+
+    @Test
+    public void refreshWithRemovedAndNewAttractions() {
+        //Given a catalog of three attractions
+        List<Attraction> attractions = new ArrayList<>(List.of(attraction("a", 0), attraction("b", 10), attraction("c", 20)));
+        AttractionCatalog catalog = new AttractionCatalog(new GpsUtilService(new GpsUtil() {
+            @Override
+            public List<Attraction> getAttractions() {
+                return List.copyOf(attractions);
+            }
+        }), 0);
+        catalog.getSnapshot();
+
+        //When one attraction is removed and another one added
+        attractions.remove(1);
+        attractions.add(attraction("d", 30));
+        AttractionCatalog.Snapshot snapshot = catalog.refresh().join();
+
+        //Then the removed attraction should keep its ordinal without being indexed, and the new one get the next ordinal
+        AttractionRegistry registry = snapshot.registry();
+        assertEquals(List.of("a", "b", "c", "d"), registry.getAttractions().stream().map(a -> a.attractionName).toList());
+        assertFalse(registry.isActive(1));
+        assertArrayEquals(new int[]{0, 2, 3}, registry.getActiveOrdinals());
+        assertEquals(3, snapshot.index().size());
+        assertArrayEquals(new int[]{3}, snapshot.index().getPositionsWithin(attraction("d", 30), 1));
+        assertEquals(0, snapshot.index().getPositionsWithin(attraction("b", 10), 1).length);
+    }
+
+    @Test
+    public void failedRefreshKeepsSnapshot() {
+        //Given a catalog whose attractions can no longer be fetched
+        boolean[] failing = {false};
+        AttractionCatalog catalog = new AttractionCatalog(new GpsUtilService(new GpsUtil() {
+            @Override
+            public List<Attraction> getAttractions() {
+                if (failing[0]) {
+                    throw new IllegalStateException("gpsUtil unavailable");
+                }
+                return List.of(attraction("a", 0));
+            }
+        }), 0);
+        AttractionCatalog.Snapshot snapshot = catalog.getSnapshot();
+        failing[0] = true;
+
+        //When refreshing the attractions
+        assertThrows(CompletionException.class, () -> catalog.refresh().join());
+
+        //Then the previous snapshot should still be served
+        assertSame(snapshot, catalog.getSnapshot());
+    }
+
+    @Test
+    public void scheduledRefreshesGoOnAfterFailure() throws InterruptedException {
+        //Given a catalog refreshed every 50 ms whose first scheduled refresh fails
+        AtomicInteger calls = new AtomicInteger();
+        AttractionCatalog catalog = new AttractionCatalog(new GpsUtilService(new GpsUtil() {
+            @Override
+            public List<Attraction> getAttractions() {
+                if (calls.incrementAndGet() == 2) {
+                    throw new IllegalStateException("gpsUtil unavailable");
+                }
+                return List.of(attraction("a", 0));
+            }
+        }), Duration.ofMillis(50));
+
+        //When waiting for the next refreshes, then they should still run and swap in new snapshots
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (catalog.getSnapshot().version() < 3) {
+            assertTrue(System.nanoTime() < deadline, "Refreshes stopped after " + calls.get() + " calls");
+            Thread.sleep(10);
+        }
+        catalog.shutdown();
+        assertTrue(calls.get() >= 4);
+    }
+
+    private Attraction attraction(String name, double latitude) {
+        return new Attraction(name, "city", "state", latitude, 0);
+    }
+}
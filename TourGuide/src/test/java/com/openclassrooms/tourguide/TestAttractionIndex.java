@@ -0,0 +1,125 @@
+package com.openclassrooms.tourguide;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+
+import com.openclassrooms.tourguide.spatial.AttractionIndex;
+import com.openclassrooms.tourguide.spatial.DistanceCalculator;
+import com.openclassrooms.tourguide.spatial.GeoPoint;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import gpsUtil.GpsUtil;
+import gpsUtil.location.Attraction;
+import gpsUtil.location.Location;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TestAttractionIndex {
+
+    private List<Attraction> attractions;
+    private AttractionIndex attractionIndex;
+    private final Random random = new Random(42);
+
+    @BeforeEach
+    public void setUp() {
+        attractions = new GpsUtil().getAttractions();
+        attractionIndex = new AttractionIndex(attractions);
+    }
+
+    @Test
+    public void getAttractionsWithin() {
+        for (int i = 0; i < 1000; i++) {
+            //Given a random location and radius
+            Location location = randomLocation();
+            double miles = random.nextDouble() * 3000;
+
+            //When searching the index
+            List<Attraction> found = attractionIndex.getAttractionsWithin(location, miles);
+
+            //Then the same attractions as a full scan should be returned
+            List<Attraction> expected = attractions.stream()
+                    .filter(attraction -> DistanceCalculator.getDistance(attraction, location) <= miles)
+                    .toList();
+            assertEquals(new HashSet<>(expected), new HashSet<>(found));
+        }
+    }
+
+    @Test
+    public void getPositionsWithin() {
+        for (int i = 0; i < 100; i++) {
+            //Given a random location and radius
+            Location location = randomLocation();
+            double miles = random.nextDouble() * 3000;
+
+            //When searching the positions of the attractions
+            int[] positions = attractionIndex.getPositionsWithin(location, miles);
+
+            //Then they should point to the attractions found by the search
+            assertEquals(new HashSet<>(attractionIndex.getAttractionsWithin(location, miles)),
+                    new HashSet<>(Arrays.stream(positions).mapToObj(attractions::get).toList()));
+        }
+    }
+
+    @Test
+    public void getAttractionsWithinOnAttraction() {
+        Attraction attraction = attractions.get(0);
+        assertTrue(attractionIndex.getAttractionsWithin(attraction, 0).contains(attraction));
+    }
+
+    @Test
+    public void getAllAttractionsWithinMaxRadius() {
+        assertEquals(attractions.size(), attractionIndex.getAttractionsWithin(randomLocation(), Integer.MAX_VALUE).size());
+    }
+
+    @Test
+    public void getNearestAttractions() {
+        for (int i = 0; i < 1000; i++) {
+            //Given a random location
+            Location location = randomLocation();
+
+            //When fetching the five closest attractions
+            List<AttractionIndex.NearbyAttraction> nearest = attractionIndex.getNearestAttractions(location, 5);
+
+            //Then they should be the five first attractions of a full sort by distance
+            List<Attraction> expected = attractions.stream()
+                    .sorted(Comparator.comparingDouble(attraction -> DistanceCalculator.getDistance(location, attraction)))
+                    .limit(5)
+                    .toList();
+            assertEquals(expected, nearest.stream().map(AttractionIndex.NearbyAttraction::attraction).toList());
+        }
+    }
+
+    @Test
+    public void getNearestAttractionsMoreThanIndexed() {
+        assertEquals(attractions.size(), attractionIndex.getNearestAttractions(randomLocation(), 1000).size());
+    }
+
+    @Test
+    public void isWithinAtTheLimit() {
+        for (int i = 0; i < 100000; i++) {
+            //Given two random points and a limit at, just under or just over their distance
+            GeoPoint point1 = GeoPoint.of(randomLocation());
+            GeoPoint point2 = i % 10 == 0 ? point1 : GeoPoint.of(randomLocation());
+            double distance = DistanceCalculator.getDistance(point1, point2);
+            double miles = switch (i % 3) {
+                case 0 -> distance;
+                case 1 -> Math.nextDown(distance);
+                default -> Math.nextUp(distance);
+            };
+
+            //When checking the proximity from the cosines
+            boolean within = DistanceCalculator.isWithin(point1, point2, miles, DistanceCalculator.cosLimit(miles));
+
+            //Then the result should be the same as comparing the exact distance
+            assertEquals(!(distance > miles), within);
+        }
+    }
+
+    private Location randomLocation() {
+        return new Location(-90 + random.nextDouble() * 180, -180 + random.nextDouble() * 360);
+    }
+}
@@ -0,0 +1,89 @@
+package com.openclassrooms.tourguide;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.openclassrooms.tourguide.cache.CoalescingCache;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TestCoalescingCache {
+
+    private final AtomicLong now = new AtomicLong();
+    private final AtomicInteger loads = new AtomicInteger();
+    private CoalescingCache<String, Integer> cache;
+
+    @BeforeEach
+    public void setUp() {
+        cache = new CoalescingCache<>(3, Duration.ofMinutes(1), now::get);
+    }
+
+    @Test
+    public void coalesceConcurrentLookups() {
+        //Given a load still in progress
+        CompletableFuture<Integer> pending = new CompletableFuture<>();
+        CompletableFuture<Integer> first = cache.get("a", key -> {
+            loads.incrementAndGet();
+            return pending;
+        });
+
+        //When the same key is looked up again
+        CompletableFuture<Integer> second = cache.get("a", this::load);
+
+        //Then both lookups should share the first load
+        pending.complete(42);
+        assertEquals(42, first.join());
+        assertEquals(42, second.join());
+        assertEquals(1, loads.get());
+        assertEquals(1, cache.getStats().hits());
+        assertEquals(1, cache.getStats().misses());
+    }
+
+    @Test
+    public void expireAfterTimeToLive() {
+        cache.get("a", this::load).join();
+
+        now.addAndGet(Duration.ofSeconds(59).toNanos());
+        cache.get("a", this::load).join();
+        assertEquals(1, loads.get());
+
+        now.addAndGet(Duration.ofSeconds(1).toNanos());
+        cache.get("a", this::load).join();
+        assertEquals(2, loads.get());
+        assertEquals(1, cache.getStats().evictions());
+    }
+
+    @Test
+    public void evictOldestWhenFull() {
+        //Given a full cache
+        cache.get("a", this::load).join();
+        cache.get("b", this::load).join();
+        cache.get("c", this::load).join();
+
+        //When a new key is loaded
+        cache.get("d", this::load).join();
+
+        //Then the oldest key should be evicted
+        assertEquals(3, cache.size());
+        assertEquals(1, cache.getStats().evictions());
+        cache.get("a", this::load).join();
+        assertEquals(5, loads.get());
+    }
+
+    @Test
+    public void doNotKeepFailedLoads() {
+        CompletableFuture<Integer> failed = cache.get("a", key -> CompletableFuture.failedFuture(new RuntimeException()));
+        assertTrue(failed.isCompletedExceptionally());
+
+        assertEquals(1, cache.get("a", this::load).join());
+        assertEquals(1, loads.get());
+    }
+
+    private CompletableFuture<Integer> load(String key) {
+        return CompletableFuture.completedFuture(loads.incrementAndGet());
+    }
+}
@@ -0,0 +1,362 @@
+package com.openclassrooms.tourguide;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Stream;
+
+import com.openclassrooms.tourguide.helper.InternalTestHelper;
+import com.openclassrooms.tourguide.model.User;
+import com.openclassrooms.tourguide.model.UserEvent;
+import com.openclassrooms.tourguide.model.UserReward;
+import com.openclassrooms.tourguide.repository.FileUserEventLog;
+import com.openclassrooms.tourguide.repository.FileUserStore;
+import com.openclassrooms.tourguide.repository.UserEventLog;
+import com.openclassrooms.tourguide.service.AttractionCatalog;
+import com.openclassrooms.tourguide.service.GpsUtilService;
+import com.openclassrooms.tourguide.service.UserService;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import gpsUtil.GpsUtil;
+import gpsUtil.location.Attraction;
+import gpsUtil.location.Location;
+import gpsUtil.location.VisitedLocation;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TestFileUserEventLog {
+
+    @TempDir
+    Path directory;
+
+    private final UUID userId = UUID.randomUUID();
+
+    @Test
+    public void appendAndReplay() throws IOException {
+        //Given a location, a reward and points appended to a log
+        FileUserEventLog log = new FileUserEventLog(directory);
+        log.replay(event -> {
+        });
+        UserEvent.LocationAdded location = new UserEvent.LocationAdded(userId, 12.5, -45.25, 1000);
+        log.append(location);
+        Attraction attraction = new Attraction("attraction", "city", "state", 1, 2);
+        log.append(new UserEvent.RewardAdded(userId, 7, attraction, location, 0));
+        log.append(new UserEvent.RewardPointsSet(userId, 7, attraction, 300));
+        log.close();
+
+        //When replaying the log
+        List<UserEvent> events = new ArrayList<>();
+        FileUserEventLog replayed = new FileUserEventLog(directory);
+        assertEquals(3, replayed.replay(events::add));
+        replayed.close();
+
+        //Then the same events should be read in order
+        assertEquals(location, events.get(0));
+        UserEvent.RewardAdded reward = (UserEvent.RewardAdded) events.get(1);
+        assertEquals(7, reward.attractionOrdinal());
+        assertEquals("attraction", reward.attraction().attractionName);
+        assertEquals(2, reward.attraction().longitude);
+        assertEquals(location, reward.location());
+        UserEvent.RewardPointsSet points = (UserEvent.RewardPointsSet) events.get(2);
+        assertEquals(7, points.attractionOrdinal());
+        assertEquals("attraction", points.attraction().attractionName);
+        assertEquals(300, points.rewardPoints());
+        assertEquals(4, replayed.position());
+    }
+
+    @Test
+    public void truncateCoveredSegments() throws IOException, InterruptedException {
+        //Given a log starting a new segment for each batch, with three batches written
+        FileUserEventLog log = new FileUserEventLog(directory, 1, 100);
+        log.replay(event -> {
+        });
+        for (int i = 0; i < 3; i++) {
+            log.append(new UserEvent.LocationAdded(userId, i, i, i));
+            awaitPosition(log, i + 2);
+        }
+        assertEquals(3, segmentCount());
+
+        //When truncating the log up to the last event
+        log.truncate(3);
+        log.close();
+
+        //Then only the segment holding the last event should be kept
+        List<UserEvent> events = new ArrayList<>();
+        new FileUserEventLog(directory).replay(events::add);
+        assertEquals(List.of(new UserEvent.LocationAdded(userId, 2, 2, 2)), events);
+    }
+
+    @Test
+    public void replayStopsAtTornRecord() throws IOException {
+        //Given a log whose last record was only partly written
+        FileUserEventLog log = new FileUserEventLog(directory);
+        log.replay(event -> {
+        });
+        log.append(new UserEvent.LocationAdded(userId, 1, 1, 1));
+        log.append(new UserEvent.LocationAdded(userId, 2, 2, 2));
+        log.close();
+        Path segment;
+        try (Stream<Path> paths = Files.list(directory)) {
+            segment = paths.findFirst().orElseThrow();
+        }
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.WRITE)) {
+            channel.truncate(channel.size() - 3);
+        }
+
+        //When replaying it, then the complete records should be read, and new events get the next sequence numbers
+        List<UserEvent> events = new ArrayList<>();
+        FileUserEventLog replayed = new FileUserEventLog(directory);
+        assertEquals(1, replayed.replay(events::add));
+        assertEquals(List.of(new UserEvent.LocationAdded(userId, 1, 1, 1)), events);
+        assertEquals(2, replayed.position());
+        replayed.close();
+    }
+
+    @Test
+    public void failedBatchDoesNotReuseSequenceNumbers() throws IOException, InterruptedException {
+        //Given a log whose disk fails to force the second batch once its records are written
+        AtomicBoolean failNextForce = new AtomicBoolean();
+        CountDownLatch failed = new CountDownLatch(1);
+        FileUserEventLog log = new FileUserEventLog(directory) {
+            @Override
+            protected FileChannel openSegment(Path path) throws IOException {
+                return new FailingForceChannel(super.openSegment(path), failNextForce, failed);
+            }
+        };
+        log.replay(event -> {
+        });
+        log.append(new UserEvent.LocationAdded(userId, 1, 1, 1));
+        awaitPosition(log, 2);
+        failNextForce.set(true);
+        log.append(new UserEvent.LocationAdded(userId, 2, 2, 2));
+        assertTrue(failed.await(5, TimeUnit.SECONDS));
+
+        //When the next batch is written, then the log is replayed
+        log.append(new UserEvent.LocationAdded(userId, 3, 3, 3));
+        awaitPosition(log, 3);
+        log.close();
+        List<UserEvent> events = new ArrayList<>();
+        FileUserEventLog replayed = new FileUserEventLog(directory);
+        replayed.replay(events::add);
+        replayed.close();
+
+        //Then the failed batch should not be replayed, and no sequence number should be given twice
+        assertEquals(List.of(new UserEvent.LocationAdded(userId, 1, 1, 1), new UserEvent.LocationAdded(userId, 3, 3, 3)),
+                events);
+        assertEquals(3, replayed.position());
+    }
+
+    @Test
+    public void userServiceReplaysEventsAfterCrash() throws IOException, InterruptedException {
+        //Given internal users checkpointed at startup, then a location and a reward logged
+        InternalTestHelper.setInternalUserNumber(10);
+        FileUserEventLog log = new FileUserEventLog(directory.resolve("log"));
+        AttractionCatalog attractionCatalog = new AttractionCatalog(new GpsUtilService(new GpsUtil()), 0);
+        UserService userService = new UserService(42, false, new FileUserStore(directory), log, attractionCatalog);
+        userService.initializeInternalUsers();
+        User user = userService.getUser("internalUser3");
+        long position = log.position();
+        VisitedLocation visitedLocation = new VisitedLocation(user.getUserId(), new Location(1, 2), new Date());
+        user.addToVisitedLocations(visitedLocation);
+        Attraction attraction = new Attraction("attraction", "city", "state", 1, 2);
+        user.addUserReward(new UserReward(5, visitedLocation, attraction));
+        user.setRewardPoints(5, 250);
+        awaitPosition(log, position + 3);
+
+        //When restarting without a last checkpoint
+        log.close();
+        UserService restarted = new UserService(7, false, new FileUserStore(directory),
+                new FileUserEventLog(directory.resolve("log")), attractionCatalog);
+
+        //Then the logged changes should be replayed over the checkpointed users, once
+        User restored = restarted.getUser("internalUser3");
+        assertEquals(4, restored.getVisitedLocations().size());
+        assertEquals(visitedLocation.timeVisited, restored.getLastVisitedLocation().timeVisited);
+        assertEquals(1, restored.getUserRewards().size());
+        assertEquals(250, restored.getUserRewards().get(0).getRewardPoints());
+        assertEquals(10, restarted.getAllUsers().size());
+        restarted.shutdown();
+    }
+
+    @Test
+    public void userServiceReplaysRewardsAgainstReorderedAttractions() throws IOException, InterruptedException {
+        //Given internal users checkpointed at startup, then rewards for the first and last of three attractions logged
+        InternalTestHelper.setInternalUserNumber(5);
+        FileUserEventLog log = new FileUserEventLog(directory.resolve("log"));
+        UserService userService = new UserService(42, false, new FileUserStore(directory), log,
+                catalog(List.of(attraction("a"), attraction("b"), attraction("c"))));
+        userService.initializeInternalUsers();
+        User user = userService.getUser("internalUser2");
+        long position = log.position();
+        user.addUserReward(new UserReward(0, user.getLastVisitedLocation(), attraction("a")));
+        user.addUserReward(new UserReward(2, user.getLastVisitedLocation(), attraction("c")));
+        user.setRewardPoints(2, 30);
+        awaitPosition(log, position + 3);
+
+        //When restarting without a last checkpoint while gpsUtil lists the attractions in reverse order
+        log.close();
+        AttractionCatalog attractionCatalog = catalog(List.of(attraction("c"), attraction("b"), attraction("a")));
+        UserService restarted = new UserService(7, false, new FileUserStore(directory),
+                new FileUserEventLog(directory.resolve("log")), attractionCatalog);
+
+        //Then the replayed rewards and points should go to the current ordinals of their attractions
+        User restored = restarted.getUser("internalUser2");
+        assertTrue(restored.isRewarded(0));
+        assertFalse(restored.isRewarded(1));
+        assertTrue(restored.isRewarded(2));
+        assertEquals(List.of("a", "c"),
+                restored.getUserRewards().stream().map(reward -> reward.attraction.attractionName).toList());
+        assertEquals(List.of(2, 0), restored.getUserRewards().stream().map(UserReward::getAttractionOrdinal).toList());
+        assertEquals(List.of(0, 30), restored.getUserRewards().stream().map(UserReward::getRewardPoints).toList());
+        restarted.shutdown();
+    }
+
+    private AttractionCatalog catalog(List<Attraction> attractions) {
+        return new AttractionCatalog(new GpsUtilService(new GpsUtil() {
+            @Override
+            public List<Attraction> getAttractions() {
+                return attractions;
+            }
+        }), 0);
+    }
+
+    private Attraction attraction(String name) {
+        return new Attraction(name, "city", "state", 0, 0);
+    }
+
+    private void awaitPosition(UserEventLog log, long position) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (log.position() < position) {
+            assertTrue(System.nanoTime() < deadline, "Events not written in time");
+            Thread.sleep(5);
+        }
+    }
+
+    private long segmentCount() throws IOException {
+        try (Stream<Path> paths = Files.list(directory)) {
+            return paths.count();
+        }
+    }
+
+    /**
+     * Segment channel whose force fails once when asked to, after the records have been written
+     */
+    private static class FailingForceChannel extends FileChannel {
+
+        private final FileChannel channel;
+        private final AtomicBoolean failNextForce;
+        private final CountDownLatch failed;
+
+        FailingForceChannel(FileChannel channel, AtomicBoolean failNextForce, CountDownLatch failed) {
+            this.channel = channel;
+            this.failNextForce = failNextForce;
+            this.failed = failed;
+        }
+
+        @Override
+        public void force(boolean metaData) throws IOException {
+            if (failNextForce.compareAndSet(true, false)) {
+                failed.countDown();
+                throw new IOException("Disk failure");
+            }
+            channel.force(metaData);
+        }
+
+        @Override
+        public int read(ByteBuffer dst) throws IOException {
+            return channel.read(dst);
+        }
+
+        @Override
+        public long read(ByteBuffer[] dsts, int offset, int length) throws IOException {
+            return channel.read(dsts, offset, length);
+        }
+
+        @Override
+        public int write(ByteBuffer src) throws IOException {
+            return channel.write(src);
+        }
+
+        @Override
+        public long write(ByteBuffer[] srcs, int offset, int length) throws IOException {
+            return channel.write(srcs, offset, length);
+        }
+
+        @Override
+        public long position() throws IOException {
+            return channel.position();
+        }
+
+        @Override
+        public FileChannel position(long newPosition) throws IOException {
+            channel.position(newPosition);
+            return this;
+        }
+
+        @Override
+        public long size() throws IOException {
+            return channel.size();
+        }
+
+        @Override
+        public FileChannel truncate(long size) throws IOException {
+            channel.truncate(size);
+            return this;
+        }
+
+        @Override
+        public long transferTo(long position, long count, WritableByteChannel target) throws IOException {
+            return channel.transferTo(position, count, target);
+        }
+
+        @Override
+        public long transferFrom(ReadableByteChannel src, long position, long count) throws IOException {
+            return channel.transferFrom(src, position, count);
+        }
+
+        @Override
+        public int read(ByteBuffer dst, long position) throws IOException {
+            return channel.read(dst, position);
+        }
+
+        @Override
+        public int write(ByteBuffer src, long position) throws IOException {
+            return channel.write(src, position);
+        }
+
+        @Override
+        public MappedByteBuffer map(MapMode mode, long position, long size) throws IOException {
+            return channel.map(mode, position, size);
+        }
+
+        @Override
+        public FileLock lock(long position, long size, boolean shared) throws IOException {
+            return channel.lock(position, size, shared);
+        }
+
+        @Override
+        public FileLock tryLock(long position, long size, boolean shared) throws IOException {
+            return channel.tryLock(position, size, shared);
+        }
+
+        @Override
+        protected void implCloseChannel() throws IOException {
+            channel.close();
+        }
+    }
+}
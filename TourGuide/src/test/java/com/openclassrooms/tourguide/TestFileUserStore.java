@@ -0,0 +1,285 @@
+package com.openclassrooms.tourguide;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Function;
+import java.util.function.ToIntFunction;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import com.openclassrooms.tourguide.helper.InternalTestHelper;
+import com.openclassrooms.tourguide.model.LocationHistory;
+import com.openclassrooms.tourguide.model.User;
+import com.openclassrooms.tourguide.model.UserPreferences;
+import com.openclassrooms.tourguide.model.UserReward;
+import com.openclassrooms.tourguide.repository.AttractionRegistry;
+import com.openclassrooms.tourguide.repository.FileUserStore;
+import com.openclassrooms.tourguide.repository.UserEventLog;
+import com.openclassrooms.tourguide.service.AttractionCatalog;
+import com.openclassrooms.tourguide.service.GpsUtilService;
+import com.openclassrooms.tourguide.service.UserService;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import gpsUtil.GpsUtil;
+import gpsUtil.location.Attraction;
+import gpsUtil.location.Location;
+import gpsUtil.location.VisitedLocation;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TestFileUserStore {
+
+    //The attractions of the users of these tests are named after their ordinal
+    private static final ToIntFunction<Attraction> SAME_ORDINALS =
+            attraction -> Integer.parseInt(attraction.attractionName.substring("attraction".length()));
+
+    @TempDir
+    Path directory;
+
+    @Test
+    public void checkpointAndLoad() throws IOException {
+        //Given users with preferences, visited locations and rewards, spread over several shards
+        FileUserStore store = new FileUserStore(directory, 3, 2);
+        store.load(SAME_ORDINALS);
+        List<User> users = IntStream.range(0, 10).mapToObj(this::user).toList();
+        users.get(4).claimUnprocessedLocations();
+
+        //When checkpointing them and loading them in another store
+        assertEquals(10, store.checkpoint(users));
+        List<User> loaded = new FileUserStore(directory, 3, 2).load(SAME_ORDINALS);
+
+        //Then the same users should be loaded, in the same order, and marked as checkpointed
+        assertEquals(10, loaded.size());
+        for (int i = 0; i < users.size(); i++) {
+            User user = users.get(i);
+            User copy = loaded.get(i);
+            assertEquals(user.getUserId(), copy.getUserId());
+            assertEquals(user.getUserName(), copy.getUserName());
+            assertEquals(user.getPhoneNumber(), copy.getPhoneNumber());
+            assertNull(copy.getEmailAddress());
+            assertEquals(user.getLatestLocationTimestamp(), copy.getLatestLocationTimestamp());
+            assertEquals(user.getUserPreferences().getNumberOfChildren(), copy.getUserPreferences().getNumberOfChildren());
+            assertEquals(user.getUnprocessedLocationCount(), copy.getUnprocessedLocationCount());
+            assertEquals(user.getVisitedLocations().size(), copy.getVisitedLocations().size());
+            for (int j = 0; j < user.getVisitedLocations().size(); j++) {
+                VisitedLocation expected = user.getVisitedLocations().get(j);
+                VisitedLocation actual = copy.getVisitedLocations().get(j);
+                assertEquals(expected.location.latitude, actual.location.latitude);
+                assertEquals(expected.location.longitude, actual.location.longitude);
+                assertEquals(expected.timeVisited, actual.timeVisited);
+                assertEquals(user.getUserId(), actual.userId);
+            }
+            List<UserReward> rewards = copy.getUserRewards();
+            assertEquals(user.getUserRewards().size(), rewards.size());
+            for (int j = 0; j < rewards.size(); j++) {
+                UserReward expected = user.getUserRewards().get(j);
+                assertEquals(expected.getAttractionOrdinal(), rewards.get(j).getAttractionOrdinal());
+                assertEquals(expected.attraction.attractionName, rewards.get(j).attraction.attractionName);
+                assertEquals(expected.getRewardPoints(), rewards.get(j).getRewardPoints());
+                assertEquals(expected.visitedLocation.timeVisited, rewards.get(j).visitedLocation.timeVisited);
+            }
+            assertEquals(copy.getRevision(), copy.getCheckpointedRevision());
+        }
+        assertEquals(0, users.get(4).getUnprocessedLocationCount());
+        assertEquals(3, users.get(5).getUnprocessedLocationCount());
+    }
+
+    @Test
+    public void checkpointChangedUsersOnly() throws IOException {
+        //Given a store with a full snapshot of users
+        FileUserStore store = new FileUserStore(directory, 4, 2);
+        store.load(SAME_ORDINALS);
+        List<User> users = IntStream.range(0, 10).mapToObj(this::user).toList();
+        store.checkpoint(users);
+
+        //When nothing changes, then a user gets a new location, and another one new points
+        int unchanged = store.checkpoint(users);
+        users.get(2).addToVisitedLocations(new VisitedLocation(users.get(2).getUserId(), new Location(1, 2), new Date(3)));
+        users.get(7).setRewardPoints(7, 1234);
+        int changed = store.checkpoint(users);
+
+        //Then only the changed users should be written, and loading should apply the delta over the snapshot
+        assertEquals(0, unchanged);
+        assertEquals(2, changed);
+        assertEquals(List.of("users-0000000000000000001.snapshot", "users-0000000000000000002.delta"), fileNames());
+        Map<UUID, User> loaded = new FileUserStore(directory, 4, 2).load(SAME_ORDINALS).stream()
+                .collect(Collectors.toMap(User::getUserId, Function.identity()));
+        assertEquals(10, loaded.size());
+        assertEquals(4, loaded.get(users.get(2).getUserId()).getVisitedLocations().size());
+        assertEquals(1234, loaded.get(users.get(7).getUserId()).getUserRewards().get(0).getRewardPoints());
+    }
+
+    @Test
+    public void fullSnapshotAfterMaxDeltas() throws IOException {
+        //Given a store allowing two deltas between full snapshots
+        FileUserStore store = new FileUserStore(directory, 4, 2);
+        store.load(SAME_ORDINALS);
+        List<User> users = IntStream.range(0, 5).mapToObj(this::user).toList();
+
+        //When checkpointing a change four times
+        for (int i = 0; i < 4; i++) {
+            users.get(i).setPhoneNumber("phone" + i);
+            store.checkpoint(users);
+        }
+
+        //Then the fourth checkpoint should be a full snapshot replacing the older files
+        assertEquals(List.of("users-0000000000000000004.snapshot"), fileNames());
+        List<User> loaded = new FileUserStore(directory).load(SAME_ORDINALS);
+        assertEquals(List.of("phone0", "phone1", "phone2", "phone3", "000"),
+                loaded.stream().map(User::getPhoneNumber).toList());
+    }
+
+    @Test
+    public void checkpointWhileLocationsAreAdded() throws IOException, InterruptedException {
+        //Given a user whose locations are never processed, getting new locations without reaching the history size
+        FileUserStore store = new FileUserStore(directory, 4, 0);
+        store.load(SAME_ORDINALS);
+        User user = new User(UUID.randomUUID(), "jon", "000", "jon@tourGuide.com");
+        Thread tracker = new Thread(() -> {
+            for (int i = 0; i < LocationHistory.DEFAULT_MAX_SIZE / 2; i++) {
+                user.addToVisitedLocations(new VisitedLocation(user.getUserId(), new Location(i % 80, 0), new Date(i)));
+                LockSupport.parkNanos(20_000);
+            }
+        });
+        tracker.start();
+
+        while (tracker.isAlive()) {
+            //When checkpointing and loading the user
+            store.checkpoint(List.of(user));
+            User loaded = new FileUserStore(directory, 4, 0).load(SAME_ORDINALS).get(0);
+
+            //Then every location loaded should still be left to process for rewards
+            assertEquals(loaded.getVisitedLocations().size(), loaded.getUnprocessedLocationCount());
+        }
+        tracker.join();
+    }
+
+    @Test
+    public void corruptedShard() throws IOException {
+        //Given a snapshot whose last byte has been changed
+        FileUserStore store = new FileUserStore(directory);
+        store.load(SAME_ORDINALS);
+        store.checkpoint(List.of(user(0)));
+        Path snapshot = directory.resolve(fileNames().get(0));
+        try (FileChannel channel = FileChannel.open(snapshot, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            ByteBuffer lastByte = ByteBuffer.allocate(1);
+            channel.read(lastByte, channel.size() - 1);
+            lastByte.put(0, (byte) (lastByte.get(0) ^ 1));
+            channel.write(lastByte.flip(), channel.size() - 1);
+        }
+
+        //Then loading should fail rather than return wrong users
+        assertThrows(IOException.class, () -> new FileUserStore(directory).load(SAME_ORDINALS));
+    }
+
+    @Test
+    public void userServiceRestoresUsers() {
+        //Given internal users checkpointed by a user service, one of them with a new location
+        InternalTestHelper.setInternalUserNumber(20);
+        AttractionCatalog attractionCatalog = new AttractionCatalog(new GpsUtilService(new GpsUtil()), 0);
+        UserService userService = new UserService(42, false, new FileUserStore(directory), UserEventLog.NONE,
+                attractionCatalog);
+        userService.initializeInternalUsers();
+        User user = userService.getUser("internalUser7");
+        user.addToVisitedLocations(new VisitedLocation(user.getUserId(), new Location(1, 2), new Date(3)));
+        userService.shutdown();
+
+        //When starting another user service on the same directory with another seed
+        UserService restarted = new UserService(7, false, new FileUserStore(directory), UserEventLog.NONE,
+                attractionCatalog);
+        restarted.initializeInternalUsers();
+
+        //Then the users should be loaded instead of generated
+        assertEquals(20, restarted.getAllUsers().size());
+        User restored = restarted.getUser("internalUser7");
+        assertEquals(user.getUserId(), restored.getUserId());
+        assertEquals(4, restored.getVisitedLocations().size());
+        assertEquals(0, restarted.checkpoint());
+    }
+
+    @Test
+    public void userServiceRestoresRewardsAgainstReorderedAttractions() {
+        //Given a user rewarded for the first and last of three attractions, then checkpointed
+        InternalTestHelper.setInternalUserNumber(5);
+        UserService userService = new UserService(42, false, new FileUserStore(directory), UserEventLog.NONE,
+                catalog(List.of(attraction("a"), attraction("b"), attraction("c"))));
+        userService.initializeInternalUsers();
+        User user = userService.getUser("internalUser2");
+        user.addUserReward(new UserReward(0, user.getLastVisitedLocation(), attraction("a"), 10));
+        user.addUserReward(new UserReward(2, user.getLastVisitedLocation(), attraction("c"), 30));
+        userService.shutdown();
+
+        //When restarting while gpsUtil lists the attractions in reverse order, without the first one
+        AttractionCatalog attractionCatalog = catalog(List.of(attraction("c"), attraction("b")));
+        UserService restarted = new UserService(7, false, new FileUserStore(directory), UserEventLog.NONE,
+                attractionCatalog);
+
+        //Then the rewards should get the current ordinals of their attractions, the removed one registered as inactive
+        User restored = restarted.getUser("internalUser2");
+        AttractionRegistry registry = attractionCatalog.getSnapshot().registry();
+        assertEquals(List.of("c", "b", "a"), registry.getAttractions().stream().map(a -> a.attractionName).toList());
+        assertFalse(registry.isActive(2));
+        Map<String, UserReward> rewards = restored.getUserRewards().stream()
+                .collect(Collectors.toMap(reward -> reward.attraction.attractionName, Function.identity()));
+        assertEquals(2, rewards.get("a").getAttractionOrdinal());
+        assertEquals(0, rewards.get("c").getAttractionOrdinal());
+        assertTrue(restored.isRewarded(0));
+        assertFalse(restored.isRewarded(1));
+        assertEquals(30, rewards.get("c").getRewardPoints());
+        restarted.shutdown();
+    }
+
+    @Test
+    public void checkpointBeforeLoad() {
+        FileUserStore store = new FileUserStore(directory);
+
+        assertThrows(IllegalStateException.class, () -> store.checkpoint(List.of(user(0))));
+    }
+
+    private List<String> fileNames() throws IOException {
+        try (Stream<Path> paths = Files.list(directory)) {
+            return paths.map(path -> path.getFileName().toString()).sorted().toList();
+        }
+    }
+
+    private AttractionCatalog catalog(List<Attraction> attractions) {
+        return new AttractionCatalog(new GpsUtilService(new GpsUtil() {
+            @Override
+            public List<Attraction> getAttractions() {
+                return attractions;
+            }
+        }), 0);
+    }
+
+    private Attraction attraction(String name) {
+        return new Attraction(name, "city", "state", 0, 0);
+    }
+
+    private User user(int index) {
+        UUID userId = UUID.randomUUID();
+        User user = new User(userId, "user" + index, "000", null);
+        user.setLatestLocationTimestamp(new Date(index * 1000L));
+        UserPreferences preferences = new UserPreferences();
+        preferences.setNumberOfChildren(index);
+        user.setUserPreferences(preferences);
+        for (int i = 0; i < 3; i++) {
+            user.addToVisitedLocations(new VisitedLocation(userId, new Location(index, i), new Date(index * 1000L + i)));
+        }
+        for (int ordinal : new int[]{index, index + 20}) {
+            Attraction attraction = new Attraction("attraction" + ordinal, "city", "state", ordinal, -ordinal);
+            user.addUserReward(new UserReward(ordinal, user.getVisitedLocations().get(0), attraction, ordinal * 10));
+        }
+        return user;
+    }
+}
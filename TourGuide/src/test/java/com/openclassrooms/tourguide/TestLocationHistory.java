@@ -0,0 +1,79 @@
+package com.openclassrooms.tourguide;
+
+import java.util.Date;
+import java.util.List;
+import java.util.UUID;
+
+import com.openclassrooms.tourguide.model.LocationHistory;
+import org.junit.jupiter.api.Test;
+
+import gpsUtil.location.Location;
+import gpsUtil.location.VisitedLocation;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TestLocationHistory {
+
+    private final UUID userId = UUID.randomUUID();
+
+    @Test
+    public void keepLocationsInOrder() {
+        //Given a history with more locations than its initial capacity
+        LocationHistory history = new LocationHistory(userId, 100);
+        for (int i = 0; i < 10; i++) {
+            history.add(location(i));
+        }
+
+        //Then all locations should be read back in order with their values
+        List<VisitedLocation> locations = history.asList();
+        assertEquals(10, locations.size());
+        for (int i = 0; i < 10; i++) {
+            assertEquals(i, locations.get(i).location.latitude);
+            assertEquals(-i, locations.get(i).location.longitude);
+            assertEquals(i * 1000L, locations.get(i).timeVisited.getTime());
+            assertEquals(userId, locations.get(i).userId);
+        }
+    }
+
+    @Test
+    public void dropOldestLocationsOverMaxSize() {
+        //Given a history limited to 3 locations
+        LocationHistory history = new LocationHistory(userId, 3);
+
+        //When adding 5 locations
+        for (int i = 0; i < 5; i++) {
+            history.add(location(i));
+        }
+
+        //Then only the 3 last locations should be kept
+        assertEquals(List.of(2.0, 3.0, 4.0), history.asList().stream().map(l -> l.location.latitude).toList());
+        assertEquals(5, history.getAddedCount());
+    }
+
+    @Test
+    public void getRangeSkipsDroppedLocations() {
+        LocationHistory history = new LocationHistory(userId, 3);
+        for (int i = 0; i < 5; i++) {
+            history.add(location(i));
+        }
+
+        assertEquals(List.of(2.0, 3.0), history.getRange(0, 4).stream().map(l -> l.location.latitude).toList());
+        assertEquals(List.of(4.0), history.getRange(4, 5).stream().map(l -> l.location.latitude).toList());
+        assertTrue(history.getRange(5, 5).isEmpty());
+    }
+
+    @Test
+    public void clear() {
+        LocationHistory history = new LocationHistory(userId, 3);
+        history.add(location(1));
+        history.clear();
+
+        assertTrue(history.asList().isEmpty());
+        assertEquals(0, history.getAddedCount());
+        assertThrows(IndexOutOfBoundsException.class, () -> history.get(0));
+    }
+
+    private VisitedLocation location(int i) {
+        return new VisitedLocation(userId, new Location(i, -i), new Date(i * 1000L));
+    }
+}
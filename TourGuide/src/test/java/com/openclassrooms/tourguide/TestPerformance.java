@@ -4,7 +4,6 @@ import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
 import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
 
 import com.openclassrooms.tourguide.service.*;
@@ -93,7 +92,7 @@ public class TestPerformance {
     // Users should be incremented up to 100,000, and test finishes within 20
     // minutes
     @Test
-    public void highVolumeGetRewards() throws InterruptedException {
+    public void highVolumeGetRewards() {
         Attraction attraction = gpsUtilService.getAttractions().join().get(0);
 
         //Given all users has a new visited location nearby an attraction
@@ -103,13 +102,10 @@ public class TestPerformance {
         StopWatch stopWatch = new StopWatch();
         stopWatch.start();
 
-        //Add Countdown latch to measure time for async threads
-        CountDownLatch latch = new CountDownLatch(allUsers.size());
-
-        //When calculating the user rewards
-        allUsers.forEach(user -> rewardsService.calculateRewards(user, latch));
-
-        latch.await();
+        //When calculating the user rewards and waiting for all reward points
+        CompletableFuture.allOf(allUsers.stream()
+                .map(rewardsService::calculateRewards)
+                .toArray(CompletableFuture[]::new)).join();
 
         //Then the attraction should be added to the user reward
         for (User user : allUsers) {
@@ -0,0 +1,95 @@
+package com.openclassrooms.tourguide;
+
+import java.util.Date;
+import java.util.List;
+import java.util.UUID;
+
+import com.openclassrooms.tourguide.model.RewardHistory;
+import com.openclassrooms.tourguide.model.UserReward;
+import org.junit.jupiter.api.Test;
+
+import gpsUtil.location.Attraction;
+import gpsUtil.location.VisitedLocation;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TestRewardHistory {
+
+    private final UUID userId = UUID.randomUUID();
+
+    @Test
+    public void keepRewardsInOrder() {
+        //Given rewards added for attractions with ordinals on both sides of a 64 bit word
+        RewardHistory history = new RewardHistory(userId);
+        int[] ordinals = {70, 3, 64, 0, 63, 12};
+        for (int ordinal : ordinals) {
+            assertTrue(history.add(reward(ordinal)));
+        }
+
+        //Then all rewards should be read back in order with their values
+        List<UserReward> rewards = history.asList();
+        assertEquals(ordinals.length, rewards.size());
+        for (int i = 0; i < ordinals.length; i++) {
+            UserReward reward = rewards.get(i);
+            assertEquals(ordinals[i], reward.getAttractionOrdinal());
+            assertEquals("attraction" + ordinals[i], reward.attraction.attractionName);
+            assertEquals(ordinals[i], reward.visitedLocation.location.latitude);
+            assertEquals(ordinals[i] * 1000L, reward.visitedLocation.timeVisited.getTime());
+            assertEquals(userId, reward.visitedLocation.userId);
+            assertEquals(ordinals[i] * 10, reward.getRewardPoints());
+            assertTrue(history.contains(ordinals[i]));
+        }
+        assertFalse(history.contains(1));
+        assertFalse(history.contains(1000));
+    }
+
+    @Test
+    public void rejectSecondRewardForAttraction() {
+        //Given a history with a reward for an attraction
+        RewardHistory history = new RewardHistory(userId);
+        history.add(reward(5));
+
+        //When adding another reward for the same attraction
+        boolean added = history.add(reward(5));
+
+        //Then it should be rejected
+        assertFalse(added);
+        assertEquals(1, history.size());
+    }
+
+    @Test
+    public void setRewardPoints() {
+        //Given a history with a reward for an attraction
+        RewardHistory history = new RewardHistory(userId);
+        history.add(reward(5));
+
+        //When setting points of the rewarded attraction and of another one
+        assertTrue(history.setRewardPoints(5, 123));
+        assertFalse(history.setRewardPoints(6, 456));
+
+        //Then only the rewarded attraction should have points
+        assertEquals(123, history.getRewardPoints(5));
+        assertEquals(123, history.asList().get(0).getRewardPoints());
+        assertEquals(0, history.getRewardPoints(6));
+    }
+
+    @Test
+    public void keepTotalPoints() {
+        //Given rewards added with points
+        RewardHistory history = new RewardHistory(userId);
+        history.add(reward(2));
+        history.add(reward(7));
+
+        //When the points of a reward change
+        history.setRewardPoints(2, 100);
+
+        //Then the total should follow
+        assertEquals(170, history.getTotalPoints());
+    }
+
+    private UserReward reward(int ordinal) {
+        Attraction attraction = new Attraction("attraction" + ordinal, "city", "state", ordinal, -ordinal);
+        VisitedLocation visitedLocation = new VisitedLocation(userId, attraction, new Date(ordinal * 1000L));
+        return new UserReward(ordinal, visitedLocation, attraction, ordinal * 10);
+    }
+}
@@ -0,0 +1,111 @@
+package com.openclassrooms.tourguide;
+
+import java.util.Date;
+import java.util.List;
+import java.util.UUID;
+
+import com.openclassrooms.tourguide.model.User;
+import com.openclassrooms.tourguide.model.UserReward;
+import com.openclassrooms.tourguide.service.RewardStatistics;
+import org.junit.jupiter.api.Test;
+
+import gpsUtil.location.Attraction;
+import gpsUtil.location.VisitedLocation;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TestRewardStatistics {
+
+    private final RewardStatistics statistics = new RewardStatistics();
+
+    @Test
+    public void rankUsersByRewardPoints() {
+        //Given three users rewarded with different points
+        User low = rewardedUser("low", 0, 10);
+        User high = rewardedUser("high", 0, 500);
+        User middle = rewardedUser("middle", 1, 100);
+
+        //When the points of the lowest user rise above all others
+        low.setRewardPoints(0, 1000);
+        statistics.updateUser(low);
+
+        //Then the users should be ranked by their new totals
+        List<RewardStatistics.UserRanking> topUsers = statistics.getTopUsers(2);
+        assertEquals(List.of("low", "high"), topUsers.stream().map(RewardStatistics.UserRanking::userName).toList());
+        assertEquals(1000, topUsers.get(0).rewardPoints());
+        assertEquals(3, statistics.getTopUsers(10).size());
+        assertEquals(middle.getUserId(), statistics.getTopUsers(3).get(2).userId());
+        assertEquals(high.getUserId(), statistics.getTopUsers(3).get(1).userId());
+    }
+
+    @Test
+    public void countRewardsByAttraction() {
+        //Given two users rewarded for the first attraction and one for the second
+        rewardedUser("first", 0, 10);
+        rewardedUser("second", 0, 10);
+        rewardedUser("third", 1, 10);
+
+        //When reading the top attractions
+        List<RewardStatistics.AttractionRewards> topAttractions = statistics.getTopAttractions(5);
+
+        //Then the first attraction should come first
+        assertEquals(List.of(new RewardStatistics.AttractionRewards("attraction0", 2),
+                new RewardStatistics.AttractionRewards("attraction1", 1)), topAttractions);
+    }
+
+    @Test
+    public void distributeUsersByRewardPoints() {
+        //Given users with 0, 1, 5, 6 and 300 points
+        rewardedUser("none", 0, 0);
+        rewardedUser("one", 0, 1);
+        rewardedUser("five", 0, 5);
+        User six = rewardedUser("six", 0, 6);
+        rewardedUser("many", 0, 300);
+
+        //When a user moves to another range
+        six.setRewardPoints(0, 8);
+        statistics.updateUser(six);
+
+        //Then each user should be counted once, in the range of its total
+        assertEquals(List.of(
+                new RewardStatistics.PointsBucket(0, 0, 1),
+                new RewardStatistics.PointsBucket(1, 1, 1),
+                new RewardStatistics.PointsBucket(4, 7, 1),
+                new RewardStatistics.PointsBucket(8, 15, 1),
+                new RewardStatistics.PointsBucket(256, 511, 1)), statistics.getRewardPointsDistribution());
+    }
+
+    @Test
+    public void addRestoredUsers() {
+        //Given a user rewarded before the statistics existed
+        User user = new User(UUID.randomUUID(), "restored", "000", "restored@tourGuide.com");
+        user.addUserReward(reward(user, 0, 40));
+        user.addUserReward(reward(user, 1, 2));
+
+        //When adding the user
+        statistics.addUsers(List.of(user));
+
+        //Then its rewards and total should be counted
+        assertEquals(42, statistics.getTopUsers(1).get(0).rewardPoints());
+        assertEquals(2, statistics.getTopAttractions(5).size());
+    }
+
+    /**
+     * Creates a user with one reward, granted without points then given its points
+     */
+    private User rewardedUser(String userName, int ordinal, int rewardPoints) {
+        User user = new User(UUID.randomUUID(), userName, "000", userName + "@tourGuide.com");
+        UserReward reward = reward(user, ordinal, 0);
+        user.addUserReward(reward);
+        statistics.rewardAdded(user, reward);
+        user.setRewardPoints(ordinal, rewardPoints);
+        statistics.updateUser(user);
+        return user;
+    }
+
+    private UserReward reward(User user, int ordinal, int rewardPoints) {
+        Attraction attraction = new Attraction("attraction" + ordinal, "city", "state", ordinal, -ordinal);
+        return new UserReward(ordinal, new VisitedLocation(user.getUserId(), attraction, new Date()), attraction,
+                rewardPoints);
+    }
+}
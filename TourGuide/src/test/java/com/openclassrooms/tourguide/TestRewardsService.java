@@ -1,6 +1,8 @@
 package com.openclassrooms.tourguide;
 
 import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
 
 import com.openclassrooms.tourguide.service.*;
 import org.junit.jupiter.api.BeforeEach;
@@ -54,6 +56,23 @@ public class TestRewardsService {
         assertEquals(1, userRewards.size());
     }
 
+    @Test
+    public void addUserRewardOncePerAttraction() {
+        //Given one user and all attractions
+        User user = new User(UUID.randomUUID(), "jon", "000", "jon@tourGuide.com");
+        List<Attraction> attractions = gpsUtilService.getAttractions().join();
+        VisitedLocation visitedLocation = new VisitedLocation(user.getUserId(), attractions.get(0), new Date());
+
+        //When every attraction is added as a reward by several threads at once
+        IntStream.range(0, 8).parallel().forEach(i -> IntStream.range(0, attractions.size()).forEach(ordinal ->
+                user.addUserReward(new UserReward(ordinal, visitedLocation, attractions.get(ordinal)))));
+
+        //Then the user should have exactly one reward per attraction
+        assertEquals(attractions.size(), user.getUserRewards().size());
+        assertTrue(IntStream.range(0, attractions.size()).allMatch(user::isRewarded));
+        assertFalse(user.addUserReward(new UserReward(0, visitedLocation, attractions.get(0))));
+    }
+
     @Test
     public void isWithinAttractionProximity() {
         Attraction attraction = gpsUtilService.getAttractions().join().get(0);
@@ -70,7 +89,7 @@ public class TestRewardsService {
         User user = userService.getAllUsers().get(0);
 
         //When calculating user rewards
-        rewardsService.calculateRewards(user, null);
+        rewardsService.calculateRewards(user).join();
         List<UserReward> userRewards = tourGuideService.getUserRewards(user);
         tourGuideService.tracker.stopTracking();
 
@@ -78,4 +97,86 @@ public class TestRewardsService {
         // reward point calculation for each attraction should be run asynchronously
         assertEquals(gpsUtil.getAttractions().size(), userRewards.size());
     }
+
+    @Test
+    public void calculateRewardsFetchesPointsConcurrently() {
+        //Given a user near all attractions and a reward lookup taking 200 ms
+        RewardsService slowRewardsService = new RewardsService(gpsUtilService,
+                new RewardCentralService(slowRewardCentral(200, 42)));
+        slowRewardsService.setProximityBuffer(Integer.MAX_VALUE);
+        User user = new User(UUID.randomUUID(), "jon", "000", "jon@tourGuide.com");
+        user.addToVisitedLocations(new VisitedLocation(user.getUserId(), gpsUtil.getAttractions().get(0), new Date()));
+
+        //When calculating the user rewards and waiting for the points
+        long start = System.nanoTime();
+        slowRewardsService.calculateRewards(user).join();
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        //Then every reward should have its points, in far less time than fetching them one after the other
+        assertEquals(gpsUtil.getAttractions().size(), user.getUserRewards().size());
+        assertTrue(user.getUserRewards().stream().allMatch(reward -> reward.getRewardPoints() == 42));
+        assertTrue(elapsedMillis < 200L * user.getUserRewards().size() / 2);
+    }
+
+    @Test
+    public void pendingRewardPointsSettleWithTheTotal() {
+        //Given a user near all attractions and a reward lookup taking 200 ms
+        RewardsService slowRewardsService = new RewardsService(gpsUtilService,
+                new RewardCentralService(slowRewardCentral(200, 42)));
+        slowRewardsService.setProximityBuffer(Integer.MAX_VALUE);
+        User user = new User(UUID.randomUUID(), "jon", "000", "jon@tourGuide.com");
+        user.addToVisitedLocations(new VisitedLocation(user.getUserId(), gpsUtil.getAttractions().get(0), new Date()));
+
+        //When calculating the user rewards without waiting for the points
+        slowRewardsService.calculateRewards(user);
+        assertFalse(user.getPendingRewardPoints().isDone());
+
+        //Then the pending lookups should settle with the total of all the points
+        user.getPendingRewardPoints().join();
+        assertEquals(42 * gpsUtil.getAttractions().size(), user.getRewardPointsTotal());
+        assertEquals(user.getRewardPointsTotal(),
+                slowRewardsService.getRewardStatistics().getTopUsers(1).get(0).rewardPoints());
+        assertEquals(gpsUtil.getAttractions().size(), slowRewardsService.getRewardStatistics().getTopAttractions(100).size());
+    }
+
+    @Test
+    public void calculateRewardsOnlyChecksNewLocations() {
+        //Given one user whose only visited location has already been rewarded
+        User user = new User(UUID.randomUUID(), "jon", "000", "jon@tourGuide.com");
+        Attraction attraction = gpsUtilService.getAttractions().join().get(0);
+        user.addToVisitedLocations(new VisitedLocation(user.getUserId(), attraction, new Date()));
+        rewardsService.calculateRewards(user).join();
+        assertEquals(1, user.getUserRewards().size());
+
+        //When all attractions come within proximity without any new location
+        rewardsService.setProximityBuffer(Integer.MAX_VALUE);
+        rewardsService.calculateRewards(user).join();
+
+        //Then the processed location should not be checked again
+        assertEquals(1, user.getUserRewards().size());
+
+        //When a new location is added
+        user.addToVisitedLocations(new VisitedLocation(user.getUserId(), attraction, new Date()));
+        rewardsService.calculateRewards(user).join();
+
+        //Then only the new location should be checked and reward all remaining attractions
+        assertEquals(gpsUtil.getAttractions().size(), user.getUserRewards().size());
+    }
+
+    /**
+     * @return a reward central taking the given time to return the same points for every attraction
+     */
+    private RewardCentral slowRewardCentral(long millis, int points) {
+        return new RewardCentral() {
+            @Override
+            public int getAttractionRewardPoints(UUID attractionId, UUID userId) {
+                try {
+                    TimeUnit.MILLISECONDS.sleep(millis);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return points;
+            }
+        };
+    }
 }
@@ -0,0 +1,61 @@
+package com.openclassrooms.tourguide;
+
+import java.io.IOException;
+import java.util.Date;
+import java.util.List;
+import java.util.UUID;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import com.openclassrooms.tourguide.model.AttractionDistanceDTO;
+import com.openclassrooms.tourguide.model.UserReward;
+import com.openclassrooms.tourguide.serialization.TourGuideJacksonModule;
+import org.junit.jupiter.api.Test;
+
+import gpsUtil.location.Attraction;
+import gpsUtil.location.Location;
+import gpsUtil.location.VisitedLocation;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TestSerialization {
+
+    private final Attraction attraction = new Attraction("Disneyland", "Anaheim", "CA", 33.817595, -117.922008);
+    private final UserReward userReward = new UserReward(3,
+            new VisitedLocation(UUID.randomUUID(), new Location(33.8, -117.9), new Date()), attraction, 250);
+    private final List<AttractionDistanceDTO> nearbyAttractions = List.of(
+            new AttractionDistanceDTO("Disneyland", new Location(33.817595, -117.922008), new Location(33.8, -117.9),
+                    1.7, 250),
+            new AttractionDistanceDTO("Jackson Hole", new Location(43.582767, -110.821999), new Location(33.8, -117.9),
+                    812.4, null));
+
+    @Test
+    public void writeSameJsonAsDefaultSerialization() throws IOException {
+        //Given a mapper with the serializers of the application and a default one
+        ObjectMapper mapper = new ObjectMapper().registerModule(new TourGuideJacksonModule());
+        ObjectMapper defaultMapper = new ObjectMapper();
+
+        //When writing user rewards and nearby attractions, then both should write the same fields and values
+        assertEquals(defaultMapper.readTree(defaultMapper.writeValueAsBytes(List.of(userReward))),
+                mapper.readTree(mapper.writeValueAsBytes(List.of(userReward))));
+        assertEquals(defaultMapper.readTree(defaultMapper.writeValueAsBytes(nearbyAttractions)),
+                mapper.readTree(mapper.writeValueAsBytes(nearbyAttractions)));
+    }
+
+    @Test
+    public void writeSmallerSmile() throws IOException {
+        //Given mappers with the serializers of the application for JSON and Smile
+        ObjectMapper jsonMapper = new ObjectMapper().registerModule(new TourGuideJacksonModule());
+        ObjectMapper smileMapper = new ObjectMapper(new SmileFactory()).registerModule(new TourGuideJacksonModule());
+        ObjectMapper defaultSmileMapper = new ObjectMapper(new SmileFactory());
+
+        //When writing the same user rewards
+        byte[] json = jsonMapper.writeValueAsBytes(List.of(userReward, userReward));
+        byte[] smile = smileMapper.writeValueAsBytes(List.of(userReward, userReward));
+
+        //Then Smile should be smaller and read back as the default serialization
+        assertTrue(smile.length < json.length, "Smile " + smile.length + " bytes, JSON " + json.length + " bytes");
+        assertEquals(defaultSmileMapper.readTree(defaultSmileMapper.writeValueAsBytes(List.of(userReward, userReward))),
+                smileMapper.readTree(smile));
+    }
+}
@@ -0,0 +1,86 @@
+package com.openclassrooms.tourguide;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+
+import com.openclassrooms.tourguide.service.ExecutionMode;
+import com.openclassrooms.tourguide.service.ThreadService;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+public class TestThreadService {
+
+    @Test
+    public void platformModeRespectsConcurrencyLimit() {
+        assertMaxConcurrency(new ThreadService("test", ExecutionMode.PLATFORM, 5), 5);
+    }
+
+    @Test
+    public void virtualModeRespectsConcurrencyLimit() {
+        assumeTrue(ExecutionMode.isVirtualSupported(), "Virtual threads require Java 21");
+        assertMaxConcurrency(new ThreadService("test", ExecutionMode.VIRTUAL, 5), 5);
+    }
+
+    @Test
+    public void virtualModeUnsupported() {
+        assumeTrue(!ExecutionMode.isVirtualSupported());
+        assertThrows(IllegalStateException.class, () -> new ThreadService("test", ExecutionMode.VIRTUAL, 5));
+    }
+
+    @Test
+    public void recordsMetrics() {
+        //Given a thread service publishing to a registry
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        ThreadService threadService = new ThreadService("test", ExecutionMode.PLATFORM, 5, registry);
+
+        //When calling the dependency successfully twice and with a failure once
+        threadService.supplyAsync("operation", () -> 1).join();
+        threadService.call("operation", () -> 2);
+        assertThrows(IllegalStateException.class, () -> threadService.call("operation", () -> {
+            throw new IllegalStateException();
+        }));
+
+        //Then the calls should be timed by outcome and no permit should remain in use
+        Timer success = registry.get("tourguide.dependency.calls")
+                .tags("dependency", "test", "operation", "operation", "outcome", "success").timer();
+        Timer error = registry.get("tourguide.dependency.calls").tags("outcome", "error").timer();
+        assertEquals(2, success.count());
+        assertEquals(1, error.count());
+        assertEquals(3, registry.get("tourguide.dependency.wait").timer().count());
+        assertEquals(0, registry.get("tourguide.dependency.active").gauge().value());
+        assertEquals(5, registry.get("tourguide.dependency.limit").gauge().value());
+    }
+
+    private void assertMaxConcurrency(ThreadService threadService, int limit) {
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+
+        //Given more tasks than the concurrency limit
+        List<CompletableFuture<Integer>> futures = IntStream.range(0, 50)
+                .mapToObj(i -> threadService.supplyAsync("test", () -> {
+                    maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+                    try {
+                        TimeUnit.MILLISECONDS.sleep(10);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    running.decrementAndGet();
+                    return i;
+                }))
+                .toList();
+
+        //When all tasks are done
+        List<Integer> results = futures.stream().map(CompletableFuture::join).toList();
+
+        //Then all results should be returned and no more tasks than the limit should have run at once
+        assertEquals(IntStream.range(0, 50).boxed().toList(), results);
+        assertTrue(maxRunning.get() <= limit);
+    }
+}
@@ -1,22 +1,35 @@
 package com.openclassrooms.tourguide;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
+import java.util.Collection;
+import java.util.Date;
 import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import com.openclassrooms.tourguide.model.AttractionDistanceDTO;
 import com.openclassrooms.tourguide.service.*;
+import com.openclassrooms.tourguide.tracker.Tracker;
+import com.openclassrooms.tourguide.tracker.TrackingPipeline;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
 import gpsUtil.GpsUtil;
+import gpsUtil.location.Location;
 import gpsUtil.location.VisitedLocation;
 import rewardCentral.RewardCentral;
 import com.openclassrooms.tourguide.helper.InternalTestHelper;
 import com.openclassrooms.tourguide.model.User;
 import tripPricer.Provider;
+import tripPricer.TripPricer;
 
 public class TestTourGuideService {
 
@@ -47,6 +60,21 @@ public class TestTourGuideService {
         assertEquals(visitedLocation.userId, user.getUserId());
     }
 
+    @Test
+    public void getUserLocationAsyncReturnsLastLocation() {
+        //Given a user with a tracked location
+        User user = new User(UUID.randomUUID(), "jon", "000", "jon@tourGuide.com");
+        VisitedLocation trackedLocation = tourGuideService.trackUserLocation(user).join();
+
+        //When getting the location without blocking
+        VisitedLocation visitedLocation = tourGuideService.getUserLocationAsync(user).join();
+        tourGuideService.tracker.stopTracking();
+
+        //Then the last location should be returned without tracking the user again
+        assertEquals(trackedLocation.location.latitude, visitedLocation.location.latitude);
+        assertEquals(1, user.getVisitedLocations().size());
+    }
+
     @Test
     public void addUser() {
         User user = new User(UUID.randomUUID(), "jon", "000", "jon@tourGuide.com");
@@ -64,6 +92,27 @@ public class TestTourGuideService {
         assertEquals(user2, retrivedUser2);
     }
 
+    @Test
+    public void getCurrentLocationsSkipsUsersWithoutLocation() {
+        //Given a user with two locations and a user without location
+        User user = new User(UUID.randomUUID(), "jon", "000", "jon@tourGuide.com");
+        User user2 = new User(UUID.randomUUID(), "jon2", "000", "jon2@tourGuide.com");
+        user.addToVisitedLocations(new VisitedLocation(user.getUserId(), new Location(1, 2), new Date(1000)));
+        user.addToVisitedLocations(new VisitedLocation(user.getUserId(), new Location(3, 4), new Date(2000)));
+        userService.addUser(user);
+        userService.addUser(user2);
+
+        //When streaming the current locations
+        List<VisitedLocation> locations = tourGuideService.getCurrentLocations().toList();
+        tourGuideService.tracker.stopTracking();
+
+        //Then only the last location of the first user should be returned, and the other user should not be tracked
+        assertEquals(1, locations.size());
+        assertEquals(user.getUserId(), locations.get(0).userId);
+        assertEquals(3, locations.get(0).location.latitude);
+        assertTrue(user2.getVisitedLocations().isEmpty());
+    }
+
     @Test
     public void getAllUsers() {
         User user = new User(UUID.randomUUID(), "jon", "000", "jon@tourGuide.com");
@@ -80,6 +129,116 @@ public class TestTourGuideService {
         assertTrue(allUsers.contains(user2));
     }
 
+    @Test
+    public void getUserById() {
+        User user = new User(UUID.randomUUID(), "jon", "000", "jon@tourGuide.com");
+        userService.addUser(user);
+        tourGuideService.tracker.stopTracking();
+
+        assertEquals(user, userService.getUserById(user.getUserId()));
+    }
+
+    @Test
+    public void addUserWhileTraversingUsers() {
+        //Given two users
+        userService.addUser(new User(UUID.randomUUID(), "jon", "000", "jon@tourGuide.com"));
+        userService.addUser(new User(UUID.randomUUID(), "jon2", "000", "jon2@tourGuide.com"));
+
+        //When users are added while going through all users
+        int traversed = 0;
+        for (User user : userService.getUsers()) {
+            if (!user.getUserName().endsWith("-new")) {
+                userService.addUser(new User(UUID.randomUUID(), user.getUserName() + "-new", "000", "new@tourGuide.com"));
+            }
+            traversed++;
+        }
+        tourGuideService.tracker.stopTracking();
+
+        //Then the traversal should not fail and the new users should be stored
+        assertTrue(traversed >= 2);
+        assertEquals(4, userService.getUsers().size());
+    }
+
+    @Test
+    public void internalUsersAreReproducible() {
+        //Given two user services with the same seed
+        InternalTestHelper.setInternalUserNumber(50);
+        UserService first = new UserService(42, false);
+        UserService second = new UserService(42, false);
+
+        //When generating the internal users
+        first.initializeInternalUsers();
+        second.initializeInternalUsers();
+        tourGuideService.tracker.stopTracking();
+
+        //Then both should have the same users with the same locations
+        assertEquals(50, first.getUsers().size());
+        for (User user : first.getUsers()) {
+            User other = second.getUser(user.getUserName());
+            assertEquals(user.getUserId(), other.getUserId());
+            assertEquals(3, other.getVisitedLocations().size());
+            for (int i = 0; i < 3; i++) {
+                assertEquals(user.getVisitedLocations().get(i).location.latitude,
+                        other.getVisitedLocations().get(i).location.latitude);
+                assertEquals(user.getVisitedLocations().get(i).location.longitude,
+                        other.getVisitedLocations().get(i).location.longitude);
+            }
+        }
+    }
+
+    @Test
+    public void lazyInternalUsers() {
+        //Given a lazy user service and an eager one with the same seed
+        InternalTestHelper.setInternalUserNumber(50);
+        UserService lazy = new UserService(42, true);
+        UserService eager = new UserService(42, false);
+        lazy.initializeInternalUsers();
+        eager.initializeInternalUsers();
+        tourGuideService.tracker.stopTracking();
+
+        //When looking up one user by name
+        User user = lazy.getUser("internalUser7");
+
+        //Then only that user should be generated, the same as the eager one
+        assertEquals(eager.getUser("internalUser7").getUserId(), user.getUserId());
+        assertSame(user, lazy.getUser("internalUser7"));
+        assertNull(lazy.getUser("internalUser50"));
+
+        //When going through all users
+        //Then the remaining users should be generated, keeping the one already looked up
+        assertEquals(50, lazy.getUsers().size());
+        assertSame(user, lazy.getUser("internalUser7"));
+    }
+
+    @Test
+    public void trackerKeepsInternalUsersLazy() throws InterruptedException {
+        //Given a lazy user service where one user has been looked up
+        InternalTestHelper.setInternalUserNumber(50);
+        UserService lazy = new UserService(42, true);
+        lazy.initializeInternalUsers();
+        tourGuideService.tracker.stopTracking();
+        User user = lazy.getUser("internalUser7");
+
+        //When the tracker runs a cycle
+        CountDownLatch tracked = new CountDownLatch(1);
+        List<Collection<User>> trackedUsers = new CopyOnWriteArrayList<>();
+        Tracker tracker = new Tracker(lazy, new TrackingPipeline(new GpsUtilService(new GpsUtil()),
+                new RewardsService(new GpsUtilService(new GpsUtil()), new RewardCentralService(new RewardCentral()))) {
+            @Override
+            public List<StageReport> track(Collection<User> users) throws InterruptedException {
+                trackedUsers.add(List.copyOf(users));
+                tracked.countDown();
+                return List.of();
+            }
+        });
+        assertTrue(tracked.await(5, TimeUnit.SECONDS));
+        tracker.stopTracking();
+
+        //Then only the user already generated should be tracked, and the others should stay pending
+        assertEquals(List.of(user), trackedUsers.get(0));
+        assertEquals(1, lazy.getGeneratedUsers().size());
+    }
+
     @Test
     public void trackUser() {
         //Given one user
@@ -109,6 +268,92 @@ public class TestTourGuideService {
         assertEquals(5, attractions.size());
     }
 
+    @Test
+    public void getNearbyAttractionsPastDeadline() {
+        //Given reward points lookups slower than the deadline
+        GpsUtilService gpsUtilService = new GpsUtilService(new GpsUtil());
+        RewardCentralService slowRewardCentralService = new RewardCentralService(new RewardCentral() {
+            @Override
+            public int getAttractionRewardPoints(UUID attractionId, UUID userId) {
+                try {
+                    TimeUnit.SECONDS.sleep(1);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return 1;
+            }
+        });
+        TourGuideService slowTourGuideService = new TourGuideService(gpsUtilService,
+                new RewardsService(gpsUtilService, slowRewardCentralService), userService, slowRewardCentralService);
+        slowTourGuideService.tracker.stopTracking();
+        slowTourGuideService.setNearbyPointsTimeoutMillis(50);
+        User user = new User(UUID.randomUUID(), "jon", "000", "jon@tourGuide.com");
+        VisitedLocation visitedLocation = gpsUtilService.fetchUserLocation(user.getUserId());
+
+        //When fetching the closest attractions
+        long start = System.nanoTime();
+        List<AttractionDistanceDTO> attractions = slowTourGuideService
+                .getNearByAttractions(visitedLocation, user).join();
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        tourGuideService.tracker.stopTracking();
+
+        //Then the five attractions should be returned without points, well before a single lookup is done
+        assertEquals(5, attractions.size());
+        assertTrue(attractions.stream().allMatch(attraction -> attraction.getRewardPoints() == null));
+        assertTrue(elapsedMillis < 1000);
+    }
+
+    @Test
+    public void getTripDealsCoalescesIdenticalRequests() {
+        //Given a pricer counting its calls
+        AtomicInteger calls = new AtomicInteger();
+        TripPricerService tripPricerService = new TripPricerService(countingTripPricer(calls));
+        UUID userId = UUID.randomUUID();
+
+        //When the same trip is priced concurrently, then again with a few more points
+        CompletableFuture<List<Provider>> first = tripPricerService.getPrice("key", userId, 2, 1, 3, 10);
+        CompletableFuture<List<Provider>> second = tripPricerService.getPrice("key", userId, 2, 1, 3, 10);
+        List<Provider> again = tripPricerService.getPrice("key", userId, 2, 1, 3, 20).join();
+
+        //Then the pricer should be called once, and all requests get the same deals
+        assertEquals(1, calls.get());
+        assertSame(first.join(), second.join());
+        assertSame(first.join(), again);
+    }
+
+    @Test
+    public void getTripDealsRepricesWhenTripOrPointsChange() {
+        //Given a trip priced once
+        AtomicInteger calls = new AtomicInteger();
+        TripPricerService tripPricerService = new TripPricerService(countingTripPricer(calls));
+        UUID userId = UUID.randomUUID();
+        tripPricerService.getPrice("key", userId, 2, 1, 3, 10).join();
+
+        //When the preferences change, then the points reach another bucket
+        tripPricerService.getPrice("key", userId, 2, 2, 3, 10).join();
+        tripPricerService.getPrice("key", userId, 2, 1, 3, 1000).join();
+
+        //Then each change should be priced again
+        assertEquals(3, calls.get());
+        assertEquals(3, tripPricerService.getCacheStats().misses());
+    }
+
+    private TripPricer countingTripPricer(AtomicInteger calls) {
+        return new TripPricer() {
+            @Override
+            public List<Provider> getPrice(String apiKey, UUID attractionId, int adults, int children, int nightsStay,
+                                           int rewardsPoints) {
+                calls.incrementAndGet();
+                try {
+                    Thread.sleep(50);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return List.of(new Provider(attractionId, "provider", 100));
+            }
+        };
+    }
+
     //TODO implement code to return all 10 trip deals, currently returning only 5
     public void getTripDeals() {
         //Given one user
@@ -0,0 +1,136 @@
+package com.openclassrooms.tourguide;
+
+import java.util.Date;
+import java.util.List;
+import java.time.Duration;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+import com.openclassrooms.tourguide.service.*;
+import com.openclassrooms.tourguide.tracker.TrackingPipeline;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import gpsUtil.GpsUtil;
+import gpsUtil.location.Attraction;
+import gpsUtil.location.VisitedLocation;
+import rewardCentral.RewardCentral;
+import com.openclassrooms.tourguide.model.User;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TestTrackingPipeline {
+
+    private GpsUtilService gpsUtilService;
+    private RewardsService rewardsService;
+
+    @BeforeEach
+    public void setUp() {
+        gpsUtilService = new GpsUtilService(new GpsUtil());
+        rewardsService = new RewardsService(gpsUtilService, new RewardCentralService(new RewardCentral()));
+    }
+
+    @Test
+    public void trackAllUsers() throws InterruptedException {
+        //Given 25 users and a pipeline with batches smaller than the number of users
+        List<User> users = IntStream.range(0, 25)
+                .mapToObj(i -> new User(UUID.randomUUID(), "jon" + i, "000", "jon" + i + "@tourGuide.com"))
+                .toList();
+        TrackingPipeline trackingPipeline = new TrackingPipeline(gpsUtilService, rewardsService, 4, 5, 5);
+
+        //When tracking the users
+        List<TrackingPipeline.StageReport> reports = trackingPipeline.track(users);
+
+        //Then each user should have one new location and each stage should report its work
+        users.forEach(user -> {
+            assertEquals(1, user.getVisitedLocations().size());
+            assertEquals(user.getUserId(), user.getLastVisitedLocation().userId);
+        });
+        assertEquals(List.of("fetch", "append", "rewards", "points"),
+                reports.stream().map(TrackingPipeline.StageReport::stage).toList());
+        assertEquals(25, reports.get(0).items());
+        assertEquals(25, reports.get(2).items());
+    }
+
+    @Test
+    public void endCycleWhenWorkersStopOnError() {
+        //Given a single fetch worker that stops on an error, and more batches than the queue holds
+        GpsUtilService failingGpsUtilService = new GpsUtilService(new GpsUtil() {
+            @Override
+            public VisitedLocation getUserLocation(UUID userId) {
+                throw new AssertionError("gpsUtil failed");
+            }
+        });
+        List<User> users = IntStream.range(0, 50)
+                .mapToObj(i -> new User(UUID.randomUUID(), "jon" + i, "000", "jon" + i + "@tourGuide.com"))
+                .toList();
+        TrackingPipeline trackingPipeline = new TrackingPipeline(failingGpsUtilService, rewardsService, 1, 1, 1);
+
+        //When tracking the users, then the cycle should still end, without any location
+        List<TrackingPipeline.StageReport> reports = assertTimeoutPreemptively(Duration.ofSeconds(10),
+                () -> trackingPipeline.track(users));
+        assertEquals(4, reports.size());
+        assertTrue(users.stream().allMatch(user -> user.getVisitedLocations().isEmpty()));
+    }
+
+    @Test
+    public void trackUserNearAttraction() throws InterruptedException {
+        //Given one user with all attractions within proximity
+        User user = new User(UUID.randomUUID(), "jon", "000", "jon@tourGuide.com");
+        Attraction attraction = gpsUtilService.getAttractions().join().get(0);
+        user.addToVisitedLocations(new VisitedLocation(user.getUserId(), attraction, new Date()));
+        rewardsService.setProximityBuffer(Integer.MAX_VALUE);
+
+        //When tracking the user
+        List<TrackingPipeline.StageReport> reports = new TrackingPipeline(gpsUtilService, rewardsService).track(List.of(user));
+
+        //Then all rewards should be added with their points once the cycle is done
+        int attractionCount = gpsUtilService.getAttractions().join().size();
+        assertEquals(attractionCount, user.getUserRewards().size());
+        assertEquals(attractionCount, reports.get(3).items());
+        user.getUserRewards().forEach(reward -> assertTrue(reward.getRewardPoints() > 0));
+    }
+
+    @Test
+    public void rewardPointsPendingUntilFetched() throws Exception {
+        //Given one user with all attractions within proximity and a reward lookup taking 300 ms
+        RewardsService slowRewardsService = new RewardsService(gpsUtilService,
+                new RewardCentralService(new RewardCentral() {
+                    @Override
+                    public int getAttractionRewardPoints(UUID attractionId, UUID userId) {
+                        try {
+                            TimeUnit.MILLISECONDS.sleep(300);
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                        }
+                        return 42;
+                    }
+                }));
+        slowRewardsService.setProximityBuffer(Integer.MAX_VALUE);
+        User user = new User(UUID.randomUUID(), "jon", "000", "jon@tourGuide.com");
+        TrackingPipeline trackingPipeline = new TrackingPipeline(gpsUtilService, slowRewardsService, 1, 1, 4);
+
+        //When the rewards have been added during the cycle but their points are still being fetched
+        CompletableFuture<List<TrackingPipeline.StageReport>> cycle = CompletableFuture.supplyAsync(() -> {
+            try {
+                return trackingPipeline.track(List.of(user));
+            } catch (InterruptedException e) {
+                throw new CompletionException(e);
+            }
+        });
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (user.getUserRewards().isEmpty()) {
+            assertTrue(System.nanoTime() < deadline, "No reward added in time");
+            Thread.sleep(5);
+        }
+
+        //Then the points should be pending, and settle with the total of all the points
+        assertFalse(user.getPendingRewardPoints().isDone());
+        cycle.get(30, TimeUnit.SECONDS);
+        user.getPendingRewardPoints().get(1, TimeUnit.SECONDS);
+        assertEquals(42 * user.getUserRewards().size(), user.getRewardPointsTotal());
+    }
+}
@@ -1,13 +1,53 @@
 package com.openclassrooms.tourguide;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Date;
+import java.util.UUID;
+
+import com.openclassrooms.tourguide.model.User;
+import com.openclassrooms.tourguide.service.GpsUtilService;
+import com.openclassrooms.tourguide.service.RewardCentralService;
+import com.openclassrooms.tourguide.service.RewardsService;
 import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.ApplicationContext;
+
+import gpsUtil.location.Attraction;
+import gpsUtil.location.VisitedLocation;
 
 @SpringBootTest
 class TourguideApplicationTests {
 
+	@Autowired
+	ApplicationContext context;
+	@Autowired
+	RewardsService rewardsService;
+	@Autowired
+	RewardCentralService rewardCentralService;
+	@Autowired
+	GpsUtilService gpsUtilService;
+
 	@Test
 	void contextLoads() {
 	}
 
+	@Test
+	void rewardsShareTheLibraryServices() {
+		//Given a single rewards service, and a user on an attraction
+		assertEquals(1, context.getBeansOfType(RewardsService.class).size());
+		User user = new User(UUID.randomUUID(), "jon", "000", "jon@tourGuide.com");
+		Attraction attraction = gpsUtilService.getAttractions().join().get(0);
+		user.addToVisitedLocations(new VisitedLocation(user.getUserId(), attraction, new Date()));
+		long misses = rewardCentralService.getCacheStats().misses();
+
+		//When calculating the rewards of the user
+		rewardsService.calculateRewards(user).join();
+
+		//Then the points should be fetched through the reward points cache of the application
+		assertTrue(rewardCentralService.getCacheStats().misses() > misses);
+	}
+
 }